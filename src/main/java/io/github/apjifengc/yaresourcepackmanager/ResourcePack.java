@@ -1,53 +1,95 @@
 package io.github.apjifengc.yaresourcepackmanager;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
+import org.apache.commons.codec.digest.DigestUtils;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import fi.iki.elonen.NanoHTTPD;
+import io.github.apjifengc.yaresourcepackmanager.http.BandwidthLimiter;
+import io.github.apjifengc.yaresourcepackmanager.http.PackHandler;
+import io.github.apjifengc.yaresourcepackmanager.http.PackResponse;
+import io.github.apjifengc.yaresourcepackmanager.http.PackServer;
+import io.github.apjifengc.yaresourcepackmanager.component.SimpleIndependentComponent;
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.ICollectionComponent;
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IComponent;
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IIndependentComponent;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildExecutor;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildToken;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildManifest;
+import io.github.apjifengc.yaresourcepackmanager.pack.CanonicalPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.FolderPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.OrderedPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.RecordingPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.ZipPackSink;
 import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+import io.github.apjifengc.yaresourcepackmanager.zip.CompressionPolicy;
+import io.github.apjifengc.yaresourcepackmanager.zip.ParallelDeflater;
 
 /**
  * A resourcepack. <br/>
  * Note that other plugins MUSTN'T use this class. <br/>
  * One server can only use one resourcepack. <br/>
- * If you want to manage the resourcepack. see {@link YaResourcepackManager}.
+ * If you want to manage the resourcepack. see {@link YaResourcepackManager}. <br/>
+ * This is also the default {@link PackServer}, which is based on NanoHTTPD.
  *
  * @author APJifengc
  * @see YaResourcepackManager
  */
-public class ResourcePack extends NanoHTTPD {
+public class ResourcePack extends NanoHTTPD implements PackServer {
     private final Logger logger = YaResourcepackManager.getInstance().getLogger();
-    private final File file;
+    private final PackHandler handler;
 
     /**
      * Create a new Resourcepack.
      *
-     * @param port The port to publish the pack.
-     * @param file The pack's zip file.
+     * @param port  The port to publish the pack.
+     * @param store The store of the published packs, the current pack in it is served.
      */
-    public ResourcePack(int port, File file) {
+    public ResourcePack(int port, PackStore store) {
+        this(port, new PackHandler(store));
+    }
+
+    /**
+     * Create a new Resourcepack.
+     *
+     * @param port    The port to publish the pack.
+     * @param handler The handler of the pack requests.
+     */
+    public ResourcePack(int port, PackHandler handler) {
         super(port);
-        this.file = file;
+        this.handler = handler;
     }
 
     /**
-     * Build the resourcepack.
+     * Build the resourcepack through a temp folder. <br/>
+     * All files are written into the folder first, and then the folder is compressed into the zip file.
+     * This is useful for debugging, see {@link #build(File, List)} for the normal way.
      *
      * @param folder     The temp folder to put the resource in.
      * @param output     The output zip file.
@@ -55,23 +97,368 @@ public class ResourcePack extends NanoHTTPD {
      * @throws IOException Throw when a file error occurred.
      */
     public void build(File folder, File output, List<IComponent> components) throws IOException {
-        String separator = File.separator;
-        generatePackMCMeta(new File(folder + separator + "pack.mcmeta"));
-        Map<Class<?>, List<ICollectionComponent>> map = new HashMap<>();
+        build(folder, output, components, new BuildManifest(), new BuildToken());
+    }
+
+    /**
+     * Build the resourcepack through a temp folder, reusing the files of the previous build in the folder. <br/>
+     * Files in the folder which are not in the resourcepack anymore will be deleted. The pack is zipped into a new
+     * file first, and then it will be moved to the output file.
+     *
+     * @param folder     The temp folder to put the resource in.
+     * @param output     The output zip file.
+     * @param components All resource components to add in the resourcepack.
+     * @param previous   The manifest of the previous build.
+     * @param token      The cancellation token of the build.
+     * @return The manifest of this build.
+     * @throws IOException Throw when a file error occurred, or the build is cancelled.
+     */
+    public BuildManifest build(File folder, File output, List<IComponent> components, BuildManifest previous,
+                               BuildToken token) throws IOException {
+        BuildManifest manifest;
+        try (FolderPackSink sink = new FolderPackSink(folder)) {
+            manifest = build(sink, components, previous, token);
+            sink.prune(manifest.getFiles());
+        }
+        token.check();
+        File temp = new File(output.getPath() + ".tmp");
+        CompressionPolicy policy = createCompressionPolicy();
+        ZipPackSink zip;
+        try (ParallelDeflater deflater = createDeflater();
+             ZipPackSink sink = new ZipPackSink(temp, null, deflater, policy, isReproducible())) {
+            zip = sink;
+            FileUtils.writeFolder(folder, sink);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        manifest.setPack(output, zip.getSha1(), zip.getSize());
+        logCompressionReport(policy);
+        return manifest;
+    }
+
+    /**
+     * Build the resourcepack straight into the zip file, without a temp folder.
+     *
+     * @param output     The output zip file.
+     * @param components All resource components to add in the resourcepack.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void build(File output, List<IComponent> components) throws IOException {
+        build(output, components, new BuildManifest(), new BuildToken());
+    }
+
+    /**
+     * Build the resourcepack straight into the zip file, reusing the files of the previous zip file. <br/>
+     * The previous zip file is the one in the previous manifest, or the output file if the manifest doesn't
+     * have one. The pack is built into a new file first, and then it will be moved to the output file.
+     *
+     * @param output     The output zip file.
+     * @param components All resource components to add in the resourcepack.
+     * @param previous   The manifest of the previous build.
+     * @param token      The cancellation token of the build.
+     * @return The manifest of this build.
+     * @throws IOException Throw when a file error occurred, or the build is cancelled.
+     */
+    public BuildManifest build(File output, List<IComponent> components, BuildManifest previous, BuildToken token)
+            throws IOException {
+        File temp = new File(output.getPath() + ".tmp");
+        File previousPack = previous.getFile() != null ? previous.getFile() : output;
+        BuildManifest manifest;
+        ZipPackSink zip;
+        CompressionPolicy policy = createCompressionPolicy();
+        try (ParallelDeflater deflater = createDeflater();
+             ZipPackSink sink = new ZipPackSink(temp, previousPack, deflater, policy, isReproducible())) {
+            zip = sink;
+            manifest = build(sink, components, previous, token);
+        } catch (IOException e) {
+            temp.delete();
+            throw e;
+        }
+        Files.move(temp.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        manifest.setPack(output, zip.getSha1(), zip.getSize());
+        logCompressionReport(policy);
+        return manifest;
+    }
+
+    /**
+     * Create the parallel deflater set by {@code build.compression} in the config.
+     *
+     * @return The deflater, or null if the parallel compression is disabled.
+     */
+    private ParallelDeflater createDeflater() {
+        FileConfiguration config = YaResourcepackManager.getInstance().getConfig();
+        if (!config.getBoolean("build.compression.parallel", true)) return null;
+        return new ParallelDeflater(config.getInt("build.compression.threads", 0),
+                config.getInt("build.compression.block-size", 1048576));
+    }
+
+    /**
+     * Create the compression policy set by {@code build.compression} in the config.
+     *
+     * @return The compression policy.
+     */
+    private CompressionPolicy createCompressionPolicy() {
+        FileConfiguration config = YaResourcepackManager.getInstance().getConfig();
+        Map<String, Integer> levels = new HashMap<>();
+        ConfigurationSection section = config.getConfigurationSection("build.compression.levels");
+        if (section != null) {
+            for (String extension : section.getKeys(false)) levels.put(extension, section.getInt(extension));
+        }
+        return new CompressionPolicy(config.getStringList("build.compression.store"), levels,
+                config.getInt("build.compression.default-level", -1),
+                config.getDouble("build.compression.ratio-threshold", 0.98));
+    }
+
+    private boolean isReproducible() {
+        return YaResourcepackManager.getInstance().getConfig().getBoolean("build.reproducible", true);
+    }
+
+    /**
+     * Get the settings which change the bytes of the generated files. <br/>
+     * Files of the previous build can only be reused if it was built with the same settings.
+     *
+     * @return The settings.
+     */
+    private String getBuildSettings() {
+        FileConfiguration config = YaResourcepackManager.getInstance().getConfig();
+        StringBuilder builder = new StringBuilder();
+        builder.append("reproducible=").append(isReproducible());
+        builder.append(";parallel=").append(config.getBoolean("build.compression.parallel", true));
+        builder.append(";block-size=").append(config.getInt("build.compression.block-size", 1048576));
+        builder.append(";store=").append(config.getStringList("build.compression.store"));
+        ConfigurationSection section = config.getConfigurationSection("build.compression.levels");
+        if (section != null) {
+            for (String extension : new TreeSet<>(section.getKeys(false))) {
+                builder.append(";").append(extension).append("=").append(section.getInt(extension));
+            }
+        }
+        builder.append(";default-level=").append(config.getInt("build.compression.default-level", -1));
+        builder.append(";ratio-threshold=").append(config.getDouble("build.compression.ratio-threshold", 0.98));
+        return builder.toString();
+    }
+
+    /**
+     * Get the fingerprint of a build. <br/>
+     * It is a hash over every component's type, identifier and hashes, the pack.mcmeta and the build settings, so
+     * two builds with the same fingerprint make the same pack.
+     *
+     * @param components All resource components to add in the resourcepack.
+     * @return The fingerprint, or null if a component has no identifier or content hash.
+     * @throws IOException Throw when the content of a component cannot be read.
+     */
+    public String getFingerprint(List<IComponent> components) throws IOException {
+        String hash = getComponentsHash(components);
+        if (hash == null) return null;
+        return DigestUtils.sha1Hex(getBuildSettings() + '\n' + new String(getPackMCMeta(), StandardCharsets.UTF_8)
+                + '\n' + hash);
+    }
+
+    /**
+     * Get the hash over every component's type, identifier and hashes, it is the component part of the
+     * {@link #getFingerprint(List) fingerprint}. <br/>
+     * A component which is both independent and in a collection, e.g. a font character with its texture, is
+     * hashed by both its content hash and its collection hash, so a change of either one changes the hash.
+     *
+     * @param components All resource components to add in the resourcepack.
+     * @return The hash, or null if a component has no identifier or hash.
+     * @throws IOException Throw when the content of a component cannot be read.
+     */
+    public static String getComponentsHash(List<IComponent> components) throws IOException {
+        StringBuilder builder = new StringBuilder();
         for (IComponent component : components) {
-            if (component instanceof IIndependentComponent) {
-                ((IIndependentComponent) component).handleResource(folder);
+            String identifier = component.getIdentifier();
+            if (identifier == null) return null;
+            builder.append(component.getClass().getName()).append(':').append(identifier);
+            if (component instanceof IIndependentComponent || !(component instanceof ICollectionComponent)) {
+                String hash = component.getContentHash();
+                if (hash == null) return null;
+                builder.append(':').append(hash);
+            }
+            if (component instanceof ICollectionComponent) {
+                String hash = ((ICollectionComponent) component).getCollectionHash();
+                if (hash == null) return null;
+                builder.append(':').append(hash);
+            }
+            builder.append('\n');
+        }
+        return DigestUtils.sha1Hex(builder.toString());
+    }
+
+    private void logCompressionReport(CompressionPolicy policy) {
+        for (String line : policy.getReport()) logger.info("Compression " + line);
+    }
+
+    /**
+     * Build the resourcepack into a pack sink.
+     *
+     * @param sink       The pack sink.
+     * @param components All resource components to add in the resourcepack.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void build(PackSink sink, List<IComponent> components) throws IOException {
+        build(sink, components, new BuildManifest(), new BuildToken());
+    }
+
+    /**
+     * Build the resourcepack into a pack sink. <br/>
+     * The independent components are generated in parallel first, and then every type of the collection
+     * components is generated in parallel. The parallelism is set by {@code build.parallelism} in the config. <br/>
+     * If a component's content hash is the same as the previous build, the sink will try to reuse the files of
+     * the previous build instead of generating them again. <br/>
+     * If many components write the same path, the component registered last wins, no matter which one is
+     * generated first. The paths of the {@link SimpleIndependentComponent}s are known before the build, so a
+     * component whose path is replaced by a later one isn't generated at all, and the files of the others are
+     * streamed into the sink, see {@link OrderedPackSink}. <br/>
+     * If {@code build.reproducible} is enabled, the keys of all Json files are sorted, and the components of every
+     * collection are sorted by their identifiers, see {@link #sortCollection(List)}.
+     *
+     * @param sink          The pack sink.
+     * @param components    All resource components to add in the resourcepack.
+     * @param previousBuild The manifest of the previous build.
+     * @param token         The cancellation token of the build, it is checked between the components.
+     * @return The manifest of this build.
+     * @throws IOException Throw when a file error occurred, or the build is cancelled.
+     */
+    public BuildManifest build(PackSink sink, List<IComponent> components, BuildManifest previousBuild,
+                               BuildToken token) throws IOException {
+        String settings = getBuildSettings();
+        BuildManifest previous = settings.equals(previousBuild.getSettings()) ? previousBuild : new BuildManifest();
+        BuildManifest manifest = new BuildManifest();
+        manifest.setSettings(settings);
+        RecordingPackSink files = new RecordingPackSink(sink);
+        Map<String, Integer> claims = getClaims(components);
+        try (OrderedPackSink ordered = new OrderedPackSink(files, claims)) {
+            build(ordered, components, claims, previous, manifest, token);
+        } finally {
+            for (IComponent component : components) {
+                if (component instanceof SimpleIndependentComponent) {
+                    ((SimpleIndependentComponent) component).releaseContent();
+                }
+            }
+        }
+        manifest.setFiles(files.getPaths());
+        return manifest;
+    }
+
+    /**
+     * Get the paths the components declare before the build, with the index of the last component declaring them.
+     */
+    private static Map<String, Integer> getClaims(List<IComponent> components) {
+        Map<String, Integer> claims = new HashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            if (components.get(i) instanceof SimpleIndependentComponent) {
+                claims.put(((SimpleIndependentComponent) components.get(i)).getFullPath(), i);
+            }
+        }
+        return claims;
+    }
+
+    private void build(OrderedPackSink ordered, List<IComponent> components, Map<String, Integer> claims,
+                       BuildManifest previous, BuildManifest manifest, BuildToken token) throws IOException {
+        AtomicInteger reused = new AtomicInteger();
+        generatePackMCMeta(getComponentSink(ordered, -1));
+        List<BuildExecutor.BuildTask> independentTasks = new ArrayList<>();
+        Map<Class<?>, List<ICollectionComponent>> map = new LinkedHashMap<>();
+        for (int i = 0; i < components.size(); i++) {
+            IComponent component = components.get(i);
+            // The file is replaced by a component registered later.
+            boolean replaced = component instanceof SimpleIndependentComponent
+                    && claims.get(((SimpleIndependentComponent) component).getFullPath()) > i;
+            if (component instanceof IIndependentComponent && !replaced) {
+                PackSink componentSink = getComponentSink(ordered, i);
+                independentTasks.add(() -> {
+                    String identifier = component.getIdentifier();
+                    String hash = identifier == null ? null : component.getContentHash();
+                    if (handleComponent(componentSink, identifier, hash, previous, manifest,
+                            ((IIndependentComponent) component)::handleResource)) {
+                        reused.incrementAndGet();
+                    }
+                });
             }
             if (component instanceof ICollectionComponent) {
                 if (!map.containsKey(component.getClass())) map.put(component.getClass(), new ArrayList<>());
                 map.get(component.getClass()).add((ICollectionComponent) component);
             }
         }
+        List<BuildExecutor.BuildTask> collectionTasks = new ArrayList<>();
+        // The collections are generated after the independent components, so their files win.
+        int index = components.size();
         for (Map.Entry<Class<?>, List<ICollectionComponent>> entry : map.entrySet()) {
             Class<?> type = entry.getKey();
-            ((ICollectionComponent) (type.cast(entry.getValue().get(0)))).handleResource(folder, entry.getValue());
+            List<ICollectionComponent> list = entry.getValue();
+            if (isReproducible()) sortCollection(list);
+            PackSink componentSink = getComponentSink(ordered, index++);
+            collectionTasks.add(() -> handleComponent(componentSink, "collection:" + type.getName(),
+                    getCollectionHash(list), previous, manifest,
+                    s -> ((ICollectionComponent) (type.cast(list.get(0)))).handleResource(s, list)));
+        }
+        int parallelism = YaResourcepackManager.getInstance().getConfig().getInt("build.parallelism", 0);
+        try (BuildExecutor executor = new BuildExecutor(parallelism)) {
+            logger.info("Generating " + independentTasks.size() + " components with " +
+                    executor.getParallelism() + " threads...");
+            executor.invokeAll(independentTasks, token);
+            executor.invokeAll(collectionTasks, token);
+        }
+        token.check();
+        ordered.flush();
+        if (reused.get() > 0) {
+            logger.info("Reused " + reused.get() + " unchanged components from the previous build.");
+        }
+    }
+
+    /**
+     * Sort the components of a collection by their identifiers, so the files they generate together don't depend
+     * on the registration order. Components without an identifier keep their order after the others. <br/>
+     * It is used by the reproducible builds.
+     *
+     * @param list The components of a collection.
+     */
+    public static void sortCollection(List<ICollectionComponent> list) {
+        list.sort(Comparator.comparing(IComponent::getIdentifier, Comparator.nullsLast(Comparator.naturalOrder())));
+    }
+
+    private PackSink getComponentSink(OrderedPackSink ordered, int index) {
+        PackSink view = ordered.view(index);
+        return isReproducible() ? new CanonicalPackSink(view) : view;
+    }
+
+    /**
+     * Reuse the files of a component from the previous build, or generate them if the component is changed.
+     *
+     * @return If the files are reused.
+     */
+    private boolean handleComponent(PackSink sink, String identifier, String hash, BuildManifest previous,
+                                    BuildManifest manifest, Generator generator) throws IOException {
+        BuildManifest.Entry entry = previous.get(identifier);
+        if (hash != null && entry != null && hash.equals(entry.getHash()) && reuse(sink, entry.getOutputs())) {
+            manifest.put(identifier, entry);
+            return true;
+        }
+        RecordingPackSink recorder = new RecordingPackSink(sink);
+        generator.generate(recorder);
+        if (identifier != null && hash != null) {
+            manifest.put(identifier, new BuildManifest.Entry(hash, recorder.getPaths()));
+        }
+        return false;
+    }
+
+    private boolean reuse(PackSink sink, List<String> paths) throws IOException {
+        for (String path : paths) {
+            if (!sink.reuse(path)) return false;
         }
-        FileUtils.compressWithoutRoot(folder, output);
+        return true;
+    }
+
+    private String getCollectionHash(List<ICollectionComponent> list) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (ICollectionComponent component : list) {
+            String hash = component.getCollectionHash();
+            if (hash == null) return null;
+            builder.append(component.getIdentifier()).append(':').append(hash).append('\n');
+        }
+        return DigestUtils.sha1Hex(builder.toString());
     }
 
     /**
@@ -85,37 +472,208 @@ public class ResourcePack extends NanoHTTPD {
             file.getParentFile().mkdirs();
             file.createNewFile();
         }
+        FileOutputStream outputStream = new FileOutputStream(file);
+        outputStream.write(getPackMCMeta());
+        outputStream.close();
+    }
+
+    /**
+     * Generate the pack.mcmeta file into a pack sink.
+     *
+     * @param sink The pack sink.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void generatePackMCMeta(PackSink sink) throws IOException {
+        sink.write("pack.mcmeta", getPackMCMeta());
+    }
+
+    private byte[] getPackMCMeta() {
         FileConfiguration config = YaResourcepackManager.getInstance().getConfig();
         JsonObject root = new JsonObject();
         JsonObject pack = new JsonObject();
         pack.add("pack_format", new JsonPrimitive(config.getInt("resourcepack.pack_format")));
         pack.add("description", new JsonPrimitive(config.getString("resourcepack.description")));
         root.add("pack", pack);
-        FileOutputStream outputStream = new FileOutputStream(file);
-        for (byte singleByte : root.toString().getBytes(StandardCharsets.UTF_8)) outputStream.write(singleByte);
-        outputStream.close();
+        return root.toString().getBytes(StandardCharsets.UTF_8);
     }
 
+    @Override
     public void startService() throws IOException {
         logger.info("Resourcepack service starting...");
         start(NanoHTTPD.SOCKET_READ_TIMEOUT, false);
         logger.info("Resourcepack service started.");
     }
 
+    @Override
     public void stopService() {
         logger.info("Resourcepack service stopping...");
         stop();
         logger.info("Resourcepack service stopped.");
     }
 
+    /**
+     * Generate the files of a component into a pack sink.
+     */
+    @FunctionalInterface
+    private interface Generator {
+        void generate(PackSink sink) throws IOException;
+    }
+
     @Override
     public NanoHTTPD.Response serve(NanoHTTPD.IHTTPSession session) {
+        String uri = session.getQueryParameterString() == null ? session.getUri()
+                : session.getUri() + "?" + session.getQueryParameterString();
+        PackResponse response = handler.handle(session.getMethod().name(), uri, session.getHeaders());
+        if (response.getPack() == null) {
+            // NanoHTTPD sends the given length as the Content-Length, and it stops at the end of the empty stream.
+            // The 304 responses have the size of the pack, the same as HEAD, see PackHandler.
+            byte[] text = response.hasBody() ? response.getText() : new byte[0];
+            return toNanoResponse(response, new ByteArrayInputStream(text));
+        }
         try {
-            FileInputStream file = new FileInputStream(this.file);
-            return newFixedLengthResponse(NanoHTTPD.Response.Status.OK, mimeTypes().get("zip"), file, file.available());
+            boolean admitted;
+            try {
+                admitted = response.awaitAdmission();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                admitted = false;
+            }
+            if (!admitted) {
+                response.close();
+                PackResponse unavailable = PackResponse.unavailable(
+                        Math.max(1, response.getAdmission().getQueueTimeout() / 1000));
+                return toNanoResponse(unavailable, new ByteArrayInputStream(unavailable.getText()));
+            }
+            return toNanoResponse(response, new PackInputStream(response));
         } catch (IOException e) {
+            response.close();
             e.printStackTrace();
             return newFixedLengthResponse(NanoHTTPD.Response.Status.NOT_FOUND, mimeTypes().get("txt"), "404");
         }
     }
-}
\ No newline at end of file
+
+    private NanoHTTPD.Response toNanoResponse(PackResponse response, InputStream data) {
+        NanoHTTPD.Response result = newFixedLengthResponse(new NanoHTTPD.Response.IStatus() {
+            @Override
+            public String getDescription() {
+                return response.getStatus() + " " + response.getReason();
+            }
+
+            @Override
+            public int getRequestStatus() {
+                return response.getStatus();
+            }
+        }, response.getHeaders().get("Content-Type"), data, Math.max(0, response.getLength()));
+        response.getHeaders().forEach((name, value) -> {
+            if (!name.equals("Content-Type")) result.addHeader(name, value);
+        });
+        return result;
+    }
+
+    /**
+     * The stream of a pack response, it closes the response when the download is finished. <br/>
+     * It reads from the shared mapped buffer of the pack, so no file is opened and nothing is copied on the heap.
+     * The file is only read directly when it can't be mapped.
+     */
+    private static class PackInputStream extends InputStream {
+        private final PackResponse response;
+        private final ByteBuffer buffer;
+        private final InputStream file;
+        private long remaining;
+
+        private PackInputStream(PackResponse response) throws IOException {
+            this.response = response;
+            this.remaining = response.getLength();
+            ByteBuffer buffer;
+            InputStream file = null;
+            try {
+                buffer = response.getPack().getBuffer();
+                buffer.position((int) response.getOffset());
+                buffer.limit((int) (response.getOffset() + response.getLength()));
+            } catch (IOException e) {
+                buffer = null;
+                file = new FileInputStream(response.getPack().getFile());
+                long skipped = 0;
+                while (skipped < response.getOffset()) {
+                    long count = file.skip(response.getOffset() - skipped);
+                    if (count <= 0) {
+                        file.close();
+                        throw new IOException("The pack file is shorter than expected.");
+                    }
+                    skipped += count;
+                }
+            }
+            this.buffer = buffer;
+            this.file = file;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            if (acquire(1) == 0) return -1;
+            int b = file != null ? file.read() : buffer.get() & 0xFF;
+            if (b >= 0) {
+                remaining--;
+                response.sent(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            if (remaining <= 0) return -1;
+            int granted = acquire((int) Math.min(len, remaining));
+            int count = granted;
+            if (file != null) {
+                count = file.read(b, off, granted);
+                if (response.getTransfer() != null) response.getTransfer().refund(granted - Math.max(0, count));
+                if (count < 0) return -1;
+            } else {
+                buffer.get(b, off, count);
+            }
+            remaining -= count;
+            response.sent(count);
+            return count;
+        }
+
+        /**
+         * Wait for the bandwidth limiter to send some bytes.
+         */
+        private int acquire(int max) throws IOException {
+            BandwidthLimiter.Transfer transfer = response.getTransfer();
+            if (transfer == null) return max;
+            try {
+                return transfer.acquireBlocking(max);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the bandwidth limiter.");
+            }
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long count = Math.max(0, Math.min(n, remaining));
+            if (file != null) count = file.skip(count);
+            else buffer.position(buffer.position() + (int) count);
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+
+        @Override
+        public void close() throws IOException {
+            // The mapped buffer may be released once the response is closed.
+            remaining = 0;
+            try {
+                if (file != null) file.close();
+            } finally {
+                response.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package io.github.apjifengc.yaresourcepackmanager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import io.github.apjifengc.yaresourcepackmanager.http.AdmissionController;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * The rollout scheduler of the resourcepack prompts. <br/>
+ * After a rebuild, the online players are prompted in batches spread over the rollout window instead of all in the
+ * same tick. Players matching the priority rules are prompted first, and players who already loaded the pack are
+ * skipped, see {@link YaResourcepackManager#getPlayerStates()}. <br/>
+ * Players are prompted only while the server is healthy and there are free download slots, so a rebuild or a lot
+ * of players joining doesn't make everyone download the pack at the same time. <br/>
+ * This must be used on the main thread.
+ *
+ * @author APJifengc
+ */
+public class RolloutScheduler {
+    /**
+     * A prompted player without a final status after this long, in milliseconds, is not waited for anymore.
+     */
+    private static final long PROMPT_TIMEOUT = 60000;
+
+    private final YaResourcepackManager plugin;
+    private final Logger logger;
+    private final Set<UUID> queue = new LinkedHashSet<>();
+    private final Map<UUID, Long> prompted = new HashMap<>();
+    private long window;
+    private int batchSize = Integer.MAX_VALUE;
+    private List<String> priority = new ArrayList<>();
+    private String rolloutHash;
+    private int ticks;
+    private int total;
+    private int done;
+    private int skipped;
+    private int reported;
+
+    /**
+     * Create a new rollout scheduler.
+     *
+     * @param plugin The plugin.
+     */
+    public RolloutScheduler(YaResourcepackManager plugin) {
+        this.plugin = plugin;
+        this.logger = plugin.getLogger();
+    }
+
+    /**
+     * Set the rollout settings.
+     *
+     * @param window    The ticks to spread the prompts of a rollout over, or {@code 0} to prompt as fast as the
+     *                  batch size allows.
+     * @param batchSize The max number of players prompted in one tick.
+     * @param priority  The priority rules, {@code permission:<node>} or {@code world:<name>}. Players matching
+     *                  earlier rules are prompted first.
+     */
+    public void setSettings(long window, int batchSize, List<String> priority) {
+        this.window = Math.max(0, window);
+        this.batchSize = batchSize > 0 ? batchSize : Integer.MAX_VALUE;
+        this.priority = new ArrayList<>(priority);
+    }
+
+    /**
+     * Start a rollout of a new pack to the players.
+     *
+     * @param pack    The pack.
+     * @param players The players to prompt.
+     */
+    public void start(PublishedPack pack, Collection<? extends Player> players) {
+        rolloutHash = pack.getSha1Hex();
+        queue.clear();
+        ticks = 0;
+        total = 0;
+        done = 0;
+        skipped = 0;
+        reported = 0;
+        List<Player> list = new ArrayList<>();
+        for (Player player : players) {
+            if (hasLoaded(player.getUniqueId(), pack)) {
+                skipped++;
+            } else {
+                list.add(player);
+            }
+        }
+        list.sort(Comparator.comparingInt(this::getPriority));
+        list.forEach(player -> queue.add(player.getUniqueId()));
+        total = list.size();
+        logger.info("Rolling out the pack to " + total + " players" +
+                (skipped > 0 ? ", " + skipped + " players already have it." : "."));
+    }
+
+    /**
+     * Add a player to the front of the queue, usually because the player joined or the download should be retried.
+     *
+     * @param player The player.
+     */
+    public void add(Player player) {
+        Set<UUID> rest = new LinkedHashSet<>(queue);
+        queue.clear();
+        queue.add(player.getUniqueId());
+        queue.addAll(rest);
+    }
+
+    /**
+     * Remove a player from the queue, usually because the player quit.
+     *
+     * @param uuid The player's UUID.
+     */
+    public void remove(UUID uuid) {
+        queue.remove(uuid);
+        prompted.remove(uuid);
+    }
+
+    /**
+     * Mark a prompted player as finished, after the player loaded, declined or failed to download the pack.
+     *
+     * @param uuid The player's UUID.
+     */
+    public void finish(UUID uuid) {
+        prompted.remove(uuid);
+    }
+
+    /**
+     * Check if a player has loaded a pack.
+     *
+     * @param uuid The player's UUID.
+     * @param pack The pack.
+     * @return If the player has loaded the pack.
+     */
+    public boolean hasLoaded(UUID uuid, PublishedPack pack) {
+        return plugin.getPlayerStates().hasLoaded(uuid, pack.getSha1());
+    }
+
+    /**
+     * Get the number of players waiting to be prompted.
+     *
+     * @return The number of players.
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Get the progress of the current rollout.
+     *
+     * @return The progress from {@code 0} to {@code 1}.
+     */
+    public double getProgress() {
+        return total == 0 ? 1 : (double) done / total;
+    }
+
+    /**
+     * Get a description of the progress of the current rollout.
+     *
+     * @return The description.
+     */
+    public String getProgressText() {
+        return done + "/" + total + " players prompted, " + skipped + " skipped, " + queue.size() + " waiting";
+    }
+
+    /**
+     * Prompt the players in the queue, as many as the rollout window, the batch size and the admission controller
+     * allow.
+     *
+     * @param admission The admission controller, or null if the downloads are not limited.
+     */
+    public void tick(AdmissionController admission) {
+        long now = System.currentTimeMillis();
+        ticks++;
+        prompted.values().removeIf(time -> now - time > PROMPT_TIMEOUT);
+        if (queue.isEmpty()) return;
+        int quota = batchSize;
+        if (window > 0) {
+            long ticksLeft = Math.max(1, window - ticks);
+            quota = (int) Math.min(quota, (queue.size() + ticksLeft - 1) / ticksLeft);
+        }
+        if (admission != null) {
+            quota = Math.min(quota, admission.isHealthy() ? admission.getAvailable() - prompted.size() : 0);
+        }
+        PublishedPack pack = plugin.getPublishedPack();
+        Iterator<UUID> iterator = queue.iterator();
+        while (quota > 0 && iterator.hasNext()) {
+            UUID uuid = iterator.next();
+            iterator.remove();
+            Player player = Bukkit.getPlayer(uuid);
+            if (player == null || !player.isOnline() || pack == null) continue;
+            plugin.reloadPlayerResourcepack(player);
+            prompted.put(uuid, now);
+            if (pack.getSha1Hex().equals(rolloutHash)) done++;
+            quota--;
+        }
+        report();
+    }
+
+    private void report() {
+        if (total == 0) return;
+        int percent = done * 100 / total;
+        if (percent / 25 > reported) {
+            reported = percent / 25;
+            logger.info("Rollout progress: " + getProgressText() + ".");
+        }
+    }
+
+    private int getPriority(Player player) {
+        for (int i = 0; i < priority.size(); i++) {
+            String rule = priority.get(i);
+            if (rule.startsWith("permission:") && player.hasPermission(rule.substring(11))) return i;
+            if (rule.startsWith("world:") && player.getWorld().getName().equals(rule.substring(6))) return i;
+        }
+        return priority.size();
+    }
+}
@@ -2,9 +2,15 @@ package io.github.apjifengc.yaresourcepackmanager;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonParser;
@@ -14,10 +20,12 @@ import com.rabbitown.yalib.module.locale.YLocale;
 
 import io.github.apjifengc.yaresourcepackmanager.exception.InvalidRegistryException;
 import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.player.PlayerResourcePackStatusEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
@@ -25,7 +33,30 @@ import org.bukkit.scheduler.BukkitRunnable;
 import io.github.apjifengc.yaresourcepackmanager.command.DebugCommand;
 import io.github.apjifengc.yaresourcepackmanager.command.MainCommand;
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IComponent;
+import io.github.apjifengc.yaresourcepackmanager.http.AdmissionController;
+import io.github.apjifengc.yaresourcepackmanager.http.BandwidthLimiter;
+import io.github.apjifengc.yaresourcepackmanager.http.NioPackServer;
+import io.github.apjifengc.yaresourcepackmanager.http.PackHandler;
+import io.github.apjifengc.yaresourcepackmanager.http.PackServer;
+import io.github.apjifengc.yaresourcepackmanager.http.TransferMetrics;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildCoordinator;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildToken;
+import io.github.apjifengc.yaresourcepackmanager.pack.BuildManifest;
+import io.github.apjifengc.yaresourcepackmanager.pack.ClusterBuild;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+import io.github.apjifengc.yaresourcepackmanager.player.DownloadTelemetry;
+import io.github.apjifengc.yaresourcepackmanager.player.PackState;
+import io.github.apjifengc.yaresourcepackmanager.player.PlayerPackState;
+import io.github.apjifengc.yaresourcepackmanager.player.PlayerStateStore;
+import io.github.apjifengc.yaresourcepackmanager.publish.HttpPackPublisher;
+import io.github.apjifengc.yaresourcepackmanager.publish.LocalObjectStore;
+import io.github.apjifengc.yaresourcepackmanager.publish.LocalPackPublisher;
+import io.github.apjifengc.yaresourcepackmanager.publish.PackPublisher;
 import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+import io.github.apjifengc.yaresourcepackmanager.util.TickMonitor;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import net.md_5.bungee.api.chat.ClickEvent;
 import net.md_5.bungee.api.chat.HoverEvent;
 import net.md_5.bungee.api.chat.TextComponent;
@@ -50,10 +81,42 @@ public final class YaResourcepackManager extends JavaPlugin implements Listener,
 
     public List<IComponent> registries = new ArrayList<>();
 
-    private File resourcePack;
+    private PackStore store;
 
     private ResourcePack pack;
 
+    private PackServer server;
+
+    private int port;
+
+    private String serverType;
+
+    private final BandwidthLimiter limiter = new BandwidthLimiter(0, 0, 0);
+
+    private final TickMonitor tickMonitor = new TickMonitor(100);
+
+    private final RolloutScheduler rollout = new RolloutScheduler(this);
+
+    private AdmissionController admission;
+
+    private PlayerStateStore playerStates = new PlayerStateStore();
+
+    private final TransferMetrics metrics = new TransferMetrics();
+
+    private final DownloadTelemetry telemetry = new DownloadTelemetry();
+
+    private int ticks;
+
+    private BuildCoordinator coordinator;
+
+    private volatile boolean external;
+
+    private ClusterBuild cluster;
+
+    private volatile PackPublisher packPublisher;
+
+    private LocalObjectStore objectStore;
+
     public static final Gson gson = new Gson();
     public static final JsonParser parser = new JsonParser();
 
@@ -65,62 +128,392 @@ public final class YaResourcepackManager extends JavaPlugin implements Listener,
         getLogger().info("Start loading component...");
         new MainCommand().register();
         new DebugCommand().register();
+        loadPlayerStates();
+        try {
+            telemetry.loadSecret(new File(getDataFolder() + File.separator + "telemetry.key"));
+        } catch (IOException e) {
+            getLogger().warning("Failed to load the telemetry secret, the pack URLs will change after a restart.");
+            e.printStackTrace();
+        }
+        metrics.setListener(telemetry);
+        coordinator = new BuildCoordinator(getLogger(), getConfig().getLong("build.debounce", 1000), this::buildPack);
+        if (getConfig().getBoolean("publish.admission.enabled", true)) {
+            admission = new AdmissionController(getConfig().getInt("publish.admission.max-transfers", 64),
+                    getConfig().getDouble("publish.admission.min-tps", 18),
+                    getConfig().getDouble("publish.admission.max-mspt", 60),
+                    getConfig().getLong("publish.admission.queue-timeout", 30000));
+        }
+        Bukkit.getScheduler().runTaskTimer(this, this::tick, 1, 1);
+        if (getConfig().getBoolean("publish.serve-last-on-boot", true)) serveLastPack();
         new BukkitRunnable() {
             @Override
             public void run() {
                 restartService();
             }
-        }.runTaskLaterAsynchronously(this, 1);
+        }.runTaskLater(this, 1);
         Bukkit.getPluginManager().registerEvents(this, this);
     }
 
     @Override
     public void onDisable() {
         // Plugin shutdown logic
-        pack.stopService();
+        if (coordinator != null) coordinator.close();
+        if (server != null) server.stopService();
+        if (packPublisher != null) packPublisher.close();
+        if (objectStore != null) objectStore.stop();
+        savePlayerStates();
+    }
+
+    private File getPlayerStatesFile() {
+        return new File(getDataFolder() + File.separator + "player_states.dat");
+    }
+
+    private void loadPlayerStates() {
+        try {
+            playerStates = PlayerStateStore.load(getPlayerStatesFile());
+        } catch (IOException e) {
+            getLogger().warning("Failed to load the player states, they will be reset.");
+            e.printStackTrace();
+        }
+        playerStates.setRetry(getConfig().getLong("player-state.retry.delay", 30) * 1000,
+                getConfig().getLong("player-state.retry.max-delay", 600) * 1000,
+                getConfig().getInt("player-state.retry.max-attempts", 5));
+        playerStates.setExpiry(getConfig().getLong("player-state.expire-days", 30) * 86400000);
+    }
+
+    private void savePlayerStates() {
+        try {
+            playerStates.save(getPlayerStatesFile());
+        } catch (IOException e) {
+            getLogger().warning("Failed to save the player states.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Restart the main resourcepack service. <br/>
+     * The build is debounced, so many requests in a short time are built only once, and a build which is running
+     * now will be superseded. The pack is built into a new file while the old pack keeps being served, and then
+     * the new pack is switched to be the published one. The old pack is deleted once all downloads of it are
+     * finished.
+     *
+     * @return The future of the next published pack.
+     */
+    public CompletableFuture<PublishedPack> restartService() {
+        if (coordinator == null) {
+            CompletableFuture<PublishedPack> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("The plugin is not enabled."));
+            return future;
+        }
+        coordinator.setDebounce(getConfig().getLong("build.debounce", 1000));
+        return coordinator.request();
     }
 
     /**
-     * Restart the main resourcepack service.
+     * Publish the pack of the last run straight from the disk, so it is served while the first build is running.
+     * <br/>
+     * When the build is finished, the new pack is swapped in, and only the players who don't have it are prompted.
+     * <br/>
+     * It runs on the main thread, so a pack publisher, which can block, is left to the first build. The first build
+     * publishes the last pack without building if nothing is changed.
      */
-    public void restartService() {
-        if (pack != null) pack.stopService();
-        pack = new ResourcePack(getConfig().getInt("publish.port", 25566), resourcePack);
-        getLogger().info("Deleting old resourcepack...");
+    private void serveLastPack() {
+        try {
+            prepareService();
+        } catch (IOException e) {
+            return;
+        }
+        if (packPublisher != null) return;
+        PublishedPack published = publishExisting(BuildManifest.load(getManifestFile()));
+        if (published != null) getLogger().info("Serving the last pack while the resourcepack is being rebuilt.");
+    }
+
+    private File getManifestFile() {
+        return new File(getDataFolder() + File.separator + "build_manifest.json");
+    }
+
+    /**
+     * Build and publish the pack, it runs on the thread of the build coordinator.
+     *
+     * @param token The cancellation token of the build.
+     * @return The published pack.
+     * @throws IOException Throw when the build failed, or it is cancelled.
+     */
+    private PublishedPack buildPack(BuildToken token) throws IOException {
         File folder = new File(getDataFolder() + File.separator + "resourcepack" + File.separator);
-        resourcePack = new File(getDataFolder() + File.separator + "packed_resourcepack.zip");
+        File manifestFile = getManifestFile();
+        prepareService();
+        boolean incremental = getConfig().getBoolean("build.incremental", true);
         try {
-            if (folder.exists()) FileUtils.deleteFile(folder);
-            if (resourcePack.exists()) FileUtils.deleteFile(resourcePack);
+            if (!incremental) {
+                getLogger().info("Deleting old resourcepack...");
+                if (folder.exists()) FileUtils.deleteFile(folder);
+            }
         } catch (IOException e) {
             getLogger().warning("Cannot delete the files previously generated. Please check if you're using it.");
             e.printStackTrace();
-            return;
+            throw e;
+        }
+        List<IComponent> components;
+        synchronized (registries) {
+            components = new ArrayList<>(registries);
+        }
+        BuildManifest last = BuildManifest.load(manifestFile);
+        String fingerprint = pack.getFingerprint(components);
+        if (fingerprint != null && fingerprint.equals(last.getFingerprint())
+                && getConfig().getBoolean("build.skip-unchanged", true)) {
+            PublishedPack existing = publishExisting(last);
+            if (existing != null) {
+                getLogger().info("The components are not changed, the last pack is published without building.");
+                return existing;
+            }
+        }
+        PublishedPack published;
+        BuildManifest[] built = new BuildManifest[1];
+        if (cluster != null && fingerprint != null) {
+            published = cluster.obtain(fingerprint, store, () -> {
+                built[0] = build(folder, components, incremental ? last : new BuildManifest(), fingerprint, token);
+                return PublishedPack.of(built[0], built[0].getBuildId(), built[0].getBuildTime());
+            });
+            cluster.cleanup(getConfig().getInt("cluster.keep-artifacts", 5));
+        } else {
+            built[0] = build(folder, components, incremental ? last : new BuildManifest(), fingerprint, token);
+            published = PublishedPack.of(built[0], built[0].getBuildId(), built[0].getBuildTime());
+        }
+        PublishedPack current = store.getCurrent();
+        if (current != null && Arrays.equals(current.getSha1(), published.getSha1())) {
+            getLogger().info("The resourcepack is not changed.");
+            if (!published.getFile().equals(current.getFile())) published.getFile().delete();
+            return current;
+        }
+        BuildManifest manifest = built[0];
+        if (manifest == null) {
+            // The pack was built by another server of the cluster.
+            manifest = new BuildManifest();
+            manifest.setBuild(published.getBuildId(), published.getBuildTime());
         }
+        manifest.setPack(store.newPackFile(published.getBuildId()), published.getSha1(), published.getSize());
+        manifest.setFingerprint(fingerprint);
+        manifest.save(manifestFile);
+        publish(published);
+        getLogger().info("Pack complete. File: " + published.getFile() + ", SHA-1: " + published.getSha1Hex());
+        getLogger().info("Pack published!");
+        Bukkit.getScheduler().runTask(this, this::reloadAllPlayerResourcepack);
+        return published;
+    }
+
+    /**
+     * Build the pack into a new file of the store.
+     *
+     * @return The manifest of the build, it has the pack file.
+     * @throws IOException Throw when the build failed, or it is cancelled.
+     */
+    private BuildManifest build(File folder, List<IComponent> components, BuildManifest previous,
+                                String fingerprint, BuildToken token) throws IOException {
         getLogger().info("Start packing resourcepack...");
+        boolean useTempFolder = getConfig().getBoolean("build.use-temp-folder", false);
+        long buildTime = System.currentTimeMillis();
+        String buildId = Long.toHexString(buildTime);
+        File output = store.newPackFile(buildId);
+        output.getParentFile().mkdirs();
         try {
-            pack.build(folder, resourcePack, registries);
+            BuildManifest manifest;
+            if (useTempFolder) {
+                manifest = pack.build(folder, output, components, previous, token);
+            } else {
+                manifest = pack.build(output, components, previous, token);
+            }
+            manifest.setBuild(buildId, buildTime);
+            manifest.setFingerprint(fingerprint);
+            return manifest;
         } catch (IOException e) {
+            output.delete();
+            if (token.isCancelled()) throw e;
             getLogger().warning("Pack failed. Please report this at https://github.com/Yallage/YaResourcepackManager .");
             e.printStackTrace();
+            throw e;
+        }
+    }
+
+    /**
+     * Create the pack store and start the server with the settings of the config.
+     *
+     * @throws IOException Throw when the server cannot be started.
+     */
+    private synchronized void prepareService() throws IOException {
+        if (store == null) {
+            external = getConfig().getString("publish.mode", "embedded").equalsIgnoreCase("external");
+            store = new PackStore(external ? new File(getConfig().getString("publish.external.folder", "packs"))
+                    : new File(getDataFolder() + File.separator + "packs" + File.separator));
+            // The standalone pack server deletes the versions of the external folder by its own retention policy.
+            store.setKeepFiles(external);
+            new File(getDataFolder() + File.separator + "packed_resourcepack.zip").delete();
+            if (packPublisher == null) packPublisher = createPublisher();
+        }
+        limiter.setLimits(getConfig().getLong("publish.bandwidth.global", 0),
+                getConfig().getLong("publish.bandwidth.per-connection", 0),
+                getConfig().getLong("publish.bandwidth.burst", 1048576));
+        if (admission != null) {
+            admission.setLimits(getConfig().getInt("publish.admission.max-transfers", 64),
+                    getConfig().getDouble("publish.admission.min-tps", 18),
+                    getConfig().getDouble("publish.admission.max-mspt", 60),
+                    getConfig().getLong("publish.admission.queue-timeout", 30000));
+        }
+        store.setRetention(getConfig().getInt("publish.retention.versions", 3),
+                getConfig().getLong("publish.retention.max-age", 3600) * 1000);
+        cluster = getConfig().getBoolean("cluster.enabled", false) ? createCluster() : null;
+        int port = getConfig().getInt("publish.port", 25566);
+        if (external) {
+            // The packs are served by the standalone pack server.
+            if (pack == null) pack = new ResourcePack(port, new PackHandler(store));
             return;
         }
-        getLogger().info("Pack complete. File: " + resourcePack);
-        if (pack != null) pack.stopService();
+        String serverType = getConfig().getString("publish.server", "nanohttpd");
+        if (server == null || port != this.port || !serverType.equals(this.serverType)) {
+            if (server != null) server.stopService();
+            PackHandler handler = new PackHandler(store, limiter, admission, metrics);
+            pack = new ResourcePack(port, handler);
+            server = createServer(serverType, port, handler);
+            try {
+                server.startService();
+                this.port = port;
+                this.serverType = serverType;
+            } catch (IOException e) {
+                server = null;
+                getLogger().warning("Failed to start the server. Please check if the port is used.");
+                e.printStackTrace();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Publish a new version with the pack publisher, switch the current pack of the store to it, and write the
+     * index file for the standalone pack server in the external mode.
+     *
+     * @throws IOException Throw when the pack publisher failed.
+     */
+    private void publish(PublishedPack published) throws IOException {
+        PackPublisher publisher = packPublisher;
+        if (publisher != null) publisher.publish(published);
+        store.publish(published);
+        store.cleanup();
+        if (!external) return;
         try {
-            pack = new ResourcePack(getConfig().getInt("publish.port", 25566), resourcePack);
-            pack.startService();
+            store.writeIndex();
         } catch (IOException e) {
-            getLogger().warning("Failed to start the server. Please check if the port is used.");
+            getLogger().warning("Failed to write the index file for the standalone pack server.");
             e.printStackTrace();
-            return;
         }
-        getLogger().info("Pack published!");
-        reloadAllPlayerResourcepack();
+    }
+
+    /**
+     * Publish the pack of the last build again, without building.
+     *
+     * @param manifest The manifest of the last build.
+     * @return The published pack, or null if the pack file of the manifest is missing or changed.
+     */
+    private PublishedPack publishExisting(BuildManifest manifest) {
+        File file = manifest.getFile();
+        if (file == null || manifest.getSha1() == null) return null;
+        String name = file.getName();
+        if (!name.startsWith("pack-") || !name.endsWith(".zip")) return null;
+        String buildId = name.substring(5, name.length() - 4);
+        // The file of the store, so the store knows it is in use.
+        file = store.newPackFile(buildId);
+        if (!file.isFile() || file.length() != manifest.getSize()) return null;
+        PublishedPack current = store.getCurrent();
+        if (current != null && current.getSha1Hex().equals(manifest.getSha1())) return current;
+        PublishedPack published;
+        try {
+            published = new PublishedPack(file, manifest.getSize(), Hex.decodeHex(manifest.getSha1()), buildId,
+                    manifest.getBuildTime() > 0 ? manifest.getBuildTime() : file.lastModified());
+        } catch (DecoderException e) {
+            return null;
+        }
+        try {
+            publish(published);
+        } catch (IOException e) {
+            getLogger().warning("Failed to publish the last pack.");
+            e.printStackTrace();
+            return null;
+        }
+        getLogger().info("Pack published! File: " + file + ", SHA-1: " + published.getSha1Hex());
+        Bukkit.getScheduler().runTask(this, this::reloadAllPlayerResourcepack);
+        return published;
+    }
+
+    /**
+     * Create the pack publisher with the settings of the config.
+     *
+     * @return The pack publisher, or null if the packs are only served by the pack server.
+     */
+    private PackPublisher createPublisher() {
+        ConfigurationSection config = getConfig().getConfigurationSection("publish.publisher");
+        if (config == null) return null;
+        String type = config.getString("type", "server").toLowerCase();
+        String publicUrl = config.getString("public-url", "");
+        switch (type) {
+            case "local":
+                if (publicUrl.isEmpty()) getLogger().warning("The public-url of the local publisher is not set.");
+                return new LocalPackPublisher(getLogger(), new File(config.getString("local.folder", "public")),
+                        publicUrl);
+            case "http":
+                String url = config.getString("http.url", "");
+                if (config.getBoolean("http.embedded-store.enabled", false)) {
+                    int port = config.getInt("http.embedded-store.port", 8080);
+                    objectStore = new LocalObjectStore(getLogger(), port,
+                            new File(getDataFolder(), config.getString("http.embedded-store.folder", "object-store")));
+                    try {
+                        objectStore.start();
+                    } catch (IOException e) {
+                        objectStore = null;
+                        getLogger().warning("Failed to start the local object store. Please check if the port is used.");
+                        e.printStackTrace();
+                        return null;
+                    }
+                    url = "http://localhost:" + port;
+                }
+                Map<String, String> headers = new LinkedHashMap<>();
+                ConfigurationSection section = config.getConfigurationSection("http.headers");
+                if (section != null) {
+                    for (String key : section.getKeys(false)) headers.put(key, section.getString(key));
+                }
+                return new HttpPackPublisher(getLogger(), url, publicUrl.isEmpty() ? url : publicUrl,
+                        config.getLong("http.part-size", 8388608), config.getInt("http.retries", 3), headers);
+            default:
+                return null;
+        }
+    }
+
+    private ClusterBuild createCluster() {
+        String node = getConfig().getString("cluster.node", "");
+        if (node == null || node.isEmpty()) {
+            try {
+                node = InetAddress.getLocalHost().getHostName();
+            } catch (UnknownHostException e) {
+                node = "unknown";
+            }
+            node += ":" + getConfig().getInt("publish.port", 25566);
+        }
+        return new ClusterBuild(getLogger(), new File(getConfig().getString("cluster.folder", "shared")), node,
+                getConfig().getLong("cluster.heartbeat", 5000),
+                getConfig().getLong("cluster.stale-timeout", 30000));
+    }
+
+    private PackServer createServer(String type, int port, PackHandler handler) {
+        if (!type.equalsIgnoreCase("nio")) return pack;
+        return new NioPackServer(getLogger(), port, handler,
+                getConfig().getInt("publish.nio.io-threads", 0),
+                getConfig().getInt("publish.nio.backlog", 128),
+                getConfig().getInt("publish.nio.max-connections", 512),
+                getConfig().getLong("publish.nio.idle-timeout", 30000),
+                getConfig().getInt("publish.nio.max-keep-alive-requests", 100));
     }
 
     /**
      * Register a resourcepack component. <br/>
+     * The resourcepack will be rebuilt after the debounce window, see {@link #restartService()}.
      *
      * @param component The component to register.
      * @throws InvalidRegistryException Throws if the component is not valid to register.
@@ -133,16 +526,62 @@ public final class YaResourcepackManager extends JavaPlugin implements Listener,
                     " is not able to register!"
             );
         }
-        registries.addAll(Arrays.asList(component));
+        synchronized (registries) {
+            registries.addAll(Arrays.asList(component));
+        }
+        restartService();
     }
 
     /**
-     * Reload all player's resourcepack.
+     * Sample the server health, retry the failed downloads and prompt the queued players, it runs every tick.
      */
-    public void reloadAllPlayerResourcepack() {
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            reloadPlayerResourcepack(player);
+    private void tick() {
+        tickMonitor.run();
+        if (++ticks % 20 == 0) {
+            if (admission != null) admission.update(tickMonitor.getTps(), tickMonitor.getMspt());
+            for (UUID uuid : playerStates.getDueRetries(System.currentTimeMillis())) {
+                Player player = Bukkit.getPlayer(uuid);
+                if (player != null && player.isOnline()) rollout.add(player);
+            }
+        }
+        if (ticks % 1200 == 0 && playerStates.isDirty()) {
+            Bukkit.getScheduler().runTaskAsynchronously(this, this::savePlayerStates);
         }
+        rollout.tick(admission);
+    }
+
+    /**
+     * Reload all player's resourcepack. <br/>
+     * The players are prompted in batches over the rollout window, and only while the server is healthy, see
+     * {@link #getRolloutScheduler()}. Players who already loaded the current pack are skipped. <br/>
+     * This must be called on the main thread.
+     */
+    public void reloadAllPlayerResourcepack() {
+        PublishedPack published = getPublishedPack();
+        if (published == null) return;
+        rollout.setSettings(getConfig().getLong("rollout.window", 30) * 20,
+                getConfig().getInt("rollout.batch-size", 5),
+                getConfig().getStringList("rollout.priority"));
+        rollout.start(published, Bukkit.getOnlinePlayers());
+    }
+
+    /**
+     * Get the rollout scheduler of the resourcepack prompts.
+     *
+     * @return The rollout scheduler.
+     */
+    public RolloutScheduler getRolloutScheduler() {
+        return rollout;
+    }
+
+    /**
+     * Get the players' resourcepack states. <br/>
+     * They are kept across restarts, so the players who already loaded the current pack can be skipped.
+     *
+     * @return The player states.
+     */
+    public PlayerStateStore getPlayerStates() {
+        return playerStates;
     }
 
     /**
@@ -151,26 +590,149 @@ public final class YaResourcepackManager extends JavaPlugin implements Listener,
      * @param player The player.
      */
     public void reloadPlayerResourcepack(Player player) {
-        try {
-            player.setResourcePack(getResourcepackURL(), FileUtils.getFileSHA1(resourcePack));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        PublishedPack published = getPublishedPack();
+        if (published == null) return;
+        playerStates.prompt(player.getUniqueId(), published.getSha1());
+        telemetry.prompt(player.getUniqueId());
+        player.setResourcePack(getResourcepackURL(published, player), published.getSha1());
+    }
+
+    /**
+     * Get the resourcepack which is published now.
+     *
+     * @return The published pack, or null if no pack is built yet.
+     */
+    public PublishedPack getPublishedPack() {
+        return store == null ? null : store.getCurrent();
+    }
+
+    /**
+     * Get the bandwidth limiter of the pack downloads. <br/>
+     * The limits can be changed at any time, and they are set from the config again when the pack is rebuilt.
+     *
+     * @return The bandwidth limiter.
+     */
+    public BandwidthLimiter getBandwidthLimiter() {
+        return limiter;
+    }
+
+    /**
+     * Get the admission controller of the pack downloads. <br/>
+     * It limits the downloads and the prompts by the TPS and MSPT of the server.
+     *
+     * @return The admission controller, or null if it is disabled.
+     */
+    public AdmissionController getAdmissionController() {
+        return admission;
+    }
+
+    /**
+     * Get the metrics of the pack downloads.
+     *
+     * @return The transfer metrics.
+     */
+    public TransferMetrics getTransferMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get the pack publisher.
+     *
+     * @return The pack publisher, or null if the packs are only served by the pack server.
+     */
+    public PackPublisher getPackPublisher() {
+        return packPublisher;
+    }
+
+    /**
+     * Set the pack publisher, it replaces the one of the config. <br/>
+     * The old publisher is closed. The packs published after this are published with the new publisher.
+     *
+     * @param publisher The pack publisher, or null to only serve the packs by the pack server.
+     */
+    public void setPackPublisher(PackPublisher publisher) {
+        PackPublisher old = packPublisher;
+        packPublisher = publisher;
+        if (old != null && old != publisher) old.close();
+    }
+
+    /**
+     * Get the telemetry of the players' downloads, it joins the downloads with the resourcepack status events.
+     *
+     * @return The download telemetry.
+     */
+    public DownloadTelemetry getDownloadTelemetry() {
+        return telemetry;
     }
 
     /**
-     * Get the resourcepack's URL.
+     * Get the resourcepack's URL. <br/>
+     * It is the URL of the current version, see {@link #getResourcepackURL(PublishedPack)}.
      *
      * @return The URL of the resourcepack.
      */
     public String getResourcepackURL() {
-        return "http://" + getConfig().getString("publish.resource_pack_ip") + "/pack.zip";
+        PublishedPack published = getPublishedPack();
+        if (published == null) return getBaseURL() + "/pack.zip";
+        return getResourcepackURL(published);
+    }
+
+    /**
+     * Get the URL of a version of the resourcepack. <br/>
+     * The URL has the SHA-1 of the version, so its content never changes, and it can still be downloaded for a
+     * while after a newer version is published.
+     *
+     * @param pack The version.
+     * @return The URL of the version.
+     */
+    public String getResourcepackURL(PublishedPack pack) {
+        PackPublisher publisher = packPublisher;
+        if (publisher != null) return publisher.getURL(pack);
+        return getBaseURL() + PackHandler.getPath(pack);
+    }
+
+    /**
+     * Get the URL of the pack server, it is the standalone pack server in the external mode.
+     */
+    private String getBaseURL() {
+        if (external) {
+            String url = getConfig().getString("publish.external.url", "");
+            return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        }
+        return "http://" + getConfig().getString("publish.resource_pack_ip");
+    }
+
+    /**
+     * Get the URL of a version of the resourcepack for a player. <br/>
+     * When this server serves the pack, the URL has the player's token, so the download can be joined with the
+     * player, see {@link #getDownloadTelemetry()}. The token never changes, so the URL stays the same for the same
+     * pack and the client can use its cached pack.
+     *
+     * @param pack   The version.
+     * @param player The player.
+     * @return The URL of the version.
+     */
+    public String getResourcepackURL(PublishedPack pack, Player player) {
+        // Only the embedded server records the downloads, the other URLs are kept the same for every player.
+        if (server == null || external || packPublisher != null) return getResourcepackURL(pack);
+        return getResourcepackURL(pack) + "?t=" + telemetry.getToken(player.getUniqueId());
     }
 
     @EventHandler
     void onResourcepackLoad(PlayerResourcePackStatusEvent event) {
         PlayerResourcePackStatusEvent.Status status = event.getStatus();
         Player player = event.getPlayer();
+        PackState state = toPackState(status);
+        if (state != null) {
+            PlayerPackState playerState = playerStates.update(player.getUniqueId(), state);
+            telemetry.update(player.getUniqueId(), state);
+            long retryDelay = playerStates.getRetryDelay(playerState);
+            if (retryDelay >= 0) {
+                getLogger().info(player.getName() + " failed to download the pack " + playerState.getFailures() +
+                        " times, retrying in " + retryDelay / 1000 + " seconds.");
+            }
+        }
+        if (status != PlayerResourcePackStatusEvent.Status.ACCEPTED) rollout.finish(player.getUniqueId());
         if (getConfig().getBoolean("force-load-pack", false)) {
             switch (status) {
                 case DECLINED:
@@ -202,8 +764,35 @@ public final class YaResourcepackManager extends JavaPlugin implements Listener,
         }
     }
 
+    private static PackState toPackState(PlayerResourcePackStatusEvent.Status status) {
+        switch (status) {
+            case ACCEPTED:
+                return PackState.ACCEPTED;
+            case DECLINED:
+                return PackState.DECLINED;
+            case SUCCESSFULLY_LOADED:
+                return PackState.LOADED;
+            case FAILED_DOWNLOAD:
+                return PackState.FAILED;
+            default:
+                return null;
+        }
+    }
+
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        reloadPlayerResourcepack(event.getPlayer());
+        Player player = event.getPlayer();
+        PublishedPack published = getPublishedPack();
+        if (getConfig().getBoolean("player-state.skip-loaded-on-join", false) && published != null
+                && rollout.hasLoaded(player.getUniqueId(), published)) {
+            return;
+        }
+        rollout.add(player);
+    }
+
+    @EventHandler
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        rollout.remove(event.getPlayer().getUniqueId());
+        telemetry.remove(event.getPlayer().getUniqueId());
     }
 }
@@ -5,10 +5,18 @@ import com.rabbitown.yalib.module.command.SimpleCommandRemote;
 import com.rabbitown.yalib.module.command.annotation.Access;
 import com.rabbitown.yalib.module.command.annotation.Action;
 import com.rabbitown.yalib.module.command.annotation.Parameter;
+import com.rabbitown.yalib.module.locale.YLocale;
 import io.github.apjifengc.yaresourcepackmanager.YaResourcepackManager;
+import io.github.apjifengc.yaresourcepackmanager.http.TransferMetrics;
+import io.github.apjifengc.yaresourcepackmanager.player.DownloadTelemetry;
+import io.github.apjifengc.yaresourcepackmanager.util.Histogram;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 
+import java.util.Map;
+import java.util.UUID;
+
 public class MainCommand extends SimpleCommandRemote {
     public MainCommand() {
         super("yrm", YaResourcepackManager.getInstance());
@@ -26,4 +34,48 @@ public class MainCommand extends SimpleCommandRemote {
     public void load(CommandSender sender) {
         YaResourcepackManager.getInstance().reloadPlayerResourcepack((Player) sender);
     }
+
+    @Access(permission = "yrm.stats")
+    @Action(action = "stats")
+    @Parameter(params = {"sender"})
+    public void stats(CommandSender sender) {
+        TransferMetrics metrics = YaResourcepackManager.getInstance().getTransferMetrics();
+        DownloadTelemetry telemetry = YaResourcepackManager.getInstance().getDownloadTelemetry();
+        sender.sendMessage(YLocale.getMessage(sender, "stats.header"));
+        sender.sendMessage(String.format(YLocale.getMessage(sender, "stats.transfers"), metrics.getActive(),
+                metrics.getPeak(), metrics.getCompleted(), metrics.getAborted(), formatBytes(metrics.getBytes())));
+        sendHistogram(sender, "stats.prompt-to-accept", telemetry.getAcceptLatencies(), false);
+        sendHistogram(sender, "stats.accept-to-load", telemetry.getDownloadLatencies(), false);
+        sendHistogram(sender, "stats.prompt-to-load", telemetry.getLoadLatencies(), false);
+        sendHistogram(sender, "stats.transfer-duration", metrics.getDurations(), false);
+        sendHistogram(sender, "stats.throughput", metrics.getThroughputs(), true);
+        for (Map.Entry<UUID, Long> entry : telemetry.getSlowest(5)) {
+            Player player = Bukkit.getPlayer(entry.getKey());
+            sender.sendMessage(String.format(YLocale.getMessage(sender, "stats.slow-player"),
+                    player == null ? entry.getKey().toString() : player.getName(),
+                    formatBytes(entry.getValue()) + "/s", telemetry.getAborted(entry.getKey())));
+        }
+    }
+
+    private static void sendHistogram(CommandSender sender, String key, Histogram histogram, boolean bytes) {
+        long[] values = histogram.getPercentiles(50, 95, 99);
+        if (values[0] < 0) {
+            sender.sendMessage(String.format(YLocale.getMessage(sender, "stats.no-samples"),
+                    YLocale.getMessage(sender, key)));
+            return;
+        }
+        String[] texts = new String[values.length];
+        for (int i = 0; i < values.length; i++) {
+            texts[i] = bytes ? formatBytes(values[i]) + "/s" : values[i] + " ms";
+        }
+        sender.sendMessage(String.format(YLocale.getMessage(sender, "stats.histogram"),
+                YLocale.getMessage(sender, key), texts[0], texts[1], texts[2], histogram.getTotal()));
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        if (bytes < 1024L * 1024 * 1024) return String.format("%.1f MB", bytes / 1024.0 / 1024);
+        return String.format("%.2f GB", bytes / 1024.0 / 1024 / 1024);
+    }
 }
@@ -1,6 +1,5 @@
 package io.github.apjifengc.yaresourcepackmanager.component;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -15,7 +14,9 @@ import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
 
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.ICollectionComponent;
-import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+import io.github.apjifengc.yaresourcepackmanager.pack.FolderPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
+import org.apache.commons.codec.digest.DigestUtils;
 
 /**
  * A custom font character in the resourcepack.
@@ -95,6 +96,11 @@ public class FontCharacter extends SimpleIndependentComponent implements ICollec
 
     @Override
     public void handleResource(File resourcePack, List<ICollectionComponent> list) throws IOException {
+        handleResource(new FolderPackSink(resourcePack), list);
+    }
+
+    @Override
+    public void handleResource(PackSink sink, List<ICollectionComponent> list) throws IOException {
         Map<String, JsonArray> fonts = new HashMap<>();
         // Put all characters into JSON array
         for (ICollectionComponent component : list) {
@@ -106,11 +112,16 @@ public class FontCharacter extends SimpleIndependentComponent implements ICollec
         for (Map.Entry<String, JsonArray> entry : fonts.entrySet()) {
             JsonObject root = new JsonObject();
             root.add("providers", entry.getValue());
-            FileUtils.writeFile(new ByteArrayInputStream(root.toString().getBytes(StandardCharsets.UTF_8)),
-                    new File(resourcePack + File.separator + "assets/minecraft/font/" + entry.getKey() + ".json"));
+            sink.write("assets/minecraft/font/" + entry.getKey() + ".json",
+                    root.toString().getBytes(StandardCharsets.UTF_8));
         }
     }
 
+    @Override
+    public String getCollectionHash() {
+        return DigestUtils.sha1Hex(fontName + getJson());
+    }
+
     @Override
     public String getExtension() {
         return ".png";
@@ -3,11 +3,14 @@ package io.github.apjifengc.yaresourcepackmanager.component;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
 
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IIndependentComponent;
+import io.github.apjifengc.yaresourcepackmanager.pack.FolderPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
 import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
 import lombok.Getter;
-import lombok.Setter;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.bukkit.Bukkit;
 
 /**
@@ -26,7 +29,10 @@ public abstract class SimpleIndependentComponent implements IIndependentComponen
      * @see SimpleIndependentComponent
      */
     @Getter private final String path;
-    @Getter @Setter private InputStream inputStream;
+    @Getter private InputStream inputStream;
+    private byte[] content;
+    private File contentFile;
+    private String contentHash;
 
     /**
      * Create a simple component.
@@ -41,8 +47,84 @@ public abstract class SimpleIndependentComponent implements IIndependentComponen
 
     @Override
     public void handleResource(File resourcePack) throws IOException {
-        File file = new File(resourcePack + File.separator + getBasePath() + path + getExtension());
-        FileUtils.writeFile(inputStream, file);
+        handleResource(new FolderPackSink(resourcePack));
+    }
+
+    /**
+     * Set the file's input stream.
+     *
+     * @param inputStream The file's input stream.
+     */
+    public synchronized void setInputStream(InputStream inputStream) {
+        this.inputStream = inputStream;
+        this.content = null;
+        this.contentHash = null;
+        if (contentFile != null) contentFile.delete();
+        this.contentFile = null;
+    }
+
+    /**
+     * Get the file's content. <br/>
+     * The input stream can only be read once, so the content is kept for the later builds, see
+     * {@link #releaseContent()}.
+     *
+     * @return The file's content.
+     * @throws IOException Throw when the input stream cannot be read.
+     */
+    public synchronized byte[] getContent() throws IOException {
+        if (content == null) {
+            content = contentFile != null ? Files.readAllBytes(contentFile.toPath())
+                    : FileUtils.readBytes(inputStream);
+        }
+        return content;
+    }
+
+    /**
+     * Release the content from the heap after a build. <br/>
+     * It is kept in a temp file, and only read again if a later build can't reuse the files of this build.
+     * The content stays on the heap if the temp file cannot be written.
+     */
+    public synchronized void releaseContent() {
+        if (content == null) return;
+        contentHash = DigestUtils.sha1Hex(content);
+        if (contentFile == null) {
+            try {
+                File file = File.createTempFile("yrm-component", ".bin");
+                file.deleteOnExit();
+                Files.write(file.toPath(), content);
+                contentFile = file;
+            } catch (IOException e) {
+                return;
+            }
+        }
+        content = null;
+    }
+
+    /**
+     * Get the file's path in the resourcepack.
+     *
+     * @return The path, it is the base path, the path and the extension.
+     */
+    public String getFullPath() {
+        return getBasePath() + path + getExtension();
+    }
+
+    @Override
+    public void handleResource(PackSink sink) throws IOException {
+        sink.write(getFullPath(), getContent());
+    }
+
+    @Override
+    public String getIdentifier() {
+        return getClass().getName() + ":" + getFullPath();
+    }
+
+    @Override
+    public String getContentHash() throws IOException {
+        synchronized (this) {
+            if (contentHash != null && content == null) return contentHash;
+        }
+        return DigestUtils.sha1Hex(getContent());
     }
 
     /**
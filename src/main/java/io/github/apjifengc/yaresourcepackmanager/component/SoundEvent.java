@@ -3,10 +3,11 @@ package io.github.apjifengc.yaresourcepackmanager.component;
 import com.google.gson.*;
 import io.github.apjifengc.yaresourcepackmanager.YaResourcepackManager;
 import io.github.apjifengc.yaresourcepackmanager.component.interfaces.*;
-import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+import io.github.apjifengc.yaresourcepackmanager.pack.FolderPackSink;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.bukkit.SoundCategory;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -126,20 +127,38 @@ public class SoundEvent extends SimpleIndependentComponent implements ICollectio
 
     @Override
     public void handleResource(File resourcePack, List<ICollectionComponent> list) throws IOException {
+        handleResource(new FolderPackSink(resourcePack), list);
+    }
+
+    @Override
+    public void handleResource(PackSink sink, List<ICollectionComponent> list) throws IOException {
         JsonObject root = new JsonObject();
         for (ICollectionComponent component : list) {
             SoundEvent soundEvent = (SoundEvent) component;
-            JsonObject object = new JsonObject();
-            object.add("category", new JsonPrimitive(map.get(soundEvent.category)));
-            if (soundEvent.replace != null) object.add("replace", new JsonPrimitive(soundEvent.replace));
-            if (soundEvent.subtitle != null) object.add("subtitle", new JsonPrimitive(soundEvent.subtitle));
-            JsonArray sounds = new JsonArray();
-            soundEvent.sounds.forEach((s) -> sounds.add(s.getJson()));
-            object.add("sounds", sounds);
-            root.add(soundEvent.id, object);
+            root.add(soundEvent.id, soundEvent.getJson());
         }
-        FileUtils.writeFile(new ByteArrayInputStream(root.toString().getBytes(StandardCharsets.UTF_8)),
-                new File(resourcePack + File.separator + "assets/minecraft/sounds.json"));
+        sink.write("assets/minecraft/sounds.json", root.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Get the JSON snippet for the sounds.json file.
+     *
+     * @return The JSON element.
+     */
+    public JsonElement getJson() {
+        JsonObject object = new JsonObject();
+        object.add("category", new JsonPrimitive(map.get(category)));
+        if (replace != null) object.add("replace", new JsonPrimitive(replace));
+        if (subtitle != null) object.add("subtitle", new JsonPrimitive(subtitle));
+        JsonArray sounds = new JsonArray();
+        this.sounds.forEach((s) -> sounds.add(s.getJson()));
+        object.add("sounds", sounds);
+        return object;
+    }
+
+    @Override
+    public String getCollectionHash() {
+        return DigestUtils.sha1Hex(id + getJson());
     }
 
     /**
@@ -2,8 +2,12 @@ package io.github.apjifengc.yaresourcepackmanager.component.interfaces;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.List;
 
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
+import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+
 /**
  * This is a collection component. <br/>
  * This will be generated only after all of this type's components was built.
@@ -19,4 +23,34 @@ public interface ICollectionComponent extends IComponent {
      * @throws IOException Throw when a file error occurred.
      */
     void handleResource(File resourcePack, List<ICollectionComponent> list) throws IOException;
+
+    /**
+     * Handle the kind of resources into a pack sink. <br/>
+     * The default implementation generates the resources into a temp folder and copies it into the sink.
+     * Override it to write into the sink directly.
+     *
+     * @param sink The pack sink.
+     * @param list The list of all of this type's components.
+     * @throws IOException Throw when a file error occurred.
+     */
+    default void handleResource(PackSink sink, List<ICollectionComponent> list) throws IOException {
+        File folder = Files.createTempDirectory("yrm-component").toFile();
+        try {
+            handleResource(folder, list);
+            FileUtils.writeFolder(folder, sink);
+        } finally {
+            FileUtils.deleteFile(folder);
+        }
+    }
+
+    /**
+     * Get the hash of the data this component adds into the collection. <br/>
+     * The collection files are generated again only when the hash of one of the components is changed.
+     *
+     * @return The hash, or null if the collection should be generated in every build.
+     * @throws IOException Throw when the content cannot be read.
+     */
+    default String getCollectionHash() throws IOException {
+        return getContentHash();
+    }
 }
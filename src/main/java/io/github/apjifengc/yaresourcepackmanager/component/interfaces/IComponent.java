@@ -1,5 +1,7 @@
 package io.github.apjifengc.yaresourcepackmanager.component.interfaces;
 
+import java.io.IOException;
+
 /**
  * A component for the resourcepack. <br/>
  * A resourcepack can be created by many components. <br/>
@@ -14,4 +16,25 @@ public interface IComponent {
      * @return Is registrable.
      */
     boolean isRegistrable();
+
+    /**
+     * Get the identifier of the component. <br/>
+     * Components with the same identifier are treated as the same component between two builds.
+     *
+     * @return The identifier, or null if the component can't be built incrementally.
+     */
+    default String getIdentifier() {
+        return null;
+    }
+
+    /**
+     * Get the hash of the component's content. <br/>
+     * If the hash is the same as the previous build, the files generated by the previous build will be reused.
+     *
+     * @return The hash, or null if the component should be generated in every build.
+     * @throws IOException Throw when the content cannot be read.
+     */
+    default String getContentHash() throws IOException {
+        return null;
+    }
 }
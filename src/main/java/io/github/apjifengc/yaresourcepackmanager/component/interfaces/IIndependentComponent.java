@@ -2,6 +2,10 @@ package io.github.apjifengc.yaresourcepackmanager.component.interfaces;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
+import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
 
 /**
  * This is a independent component. <br/>
@@ -17,4 +21,22 @@ public interface IIndependentComponent extends IComponent {
      * @throws IOException Throw when a file error occurred.
      */
     void handleResource(File resourcePack) throws IOException;
+
+    /**
+     * Handle the component into a pack sink. <br/>
+     * The default implementation generates the component into a temp folder and copies it into the sink.
+     * Override it to write into the sink directly.
+     *
+     * @param sink The pack sink.
+     * @throws IOException Throw when a file error occurred.
+     */
+    default void handleResource(PackSink sink) throws IOException {
+        File folder = Files.createTempDirectory("yrm-component").toFile();
+        try {
+            handleResource(folder);
+            FileUtils.writeFolder(folder, sink);
+        } finally {
+            FileUtils.deleteFile(folder);
+        }
+    }
 }
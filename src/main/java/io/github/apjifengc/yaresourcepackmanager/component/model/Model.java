@@ -276,11 +276,9 @@ public class Model extends SimpleIndependentComponent {
     }
 
     @Override
-    public void handleResource(File resourcePack) throws IOException {
-        if (super.getInputStream() == null) {
-            super.setInputStream(new ByteArrayInputStream(toJson().toString().getBytes(StandardCharsets.UTF_8)));
-        }
-        super.handleResource(resourcePack);
+    public synchronized byte[] getContent() throws IOException {
+        if (super.getInputStream() == null) return toJson().toString().getBytes(StandardCharsets.UTF_8);
+        return super.getContent();
     }
 
     @Override
@@ -4,8 +4,9 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
-import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
 import io.github.apjifengc.yaresourcepackmanager.util.Pair;
+import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
@@ -115,11 +116,14 @@ public class AnimatedTexture extends Texture {
     }
 
     @Override
-    public void handleResource(File resourcePack) throws IOException {
-        super.handleResource(resourcePack);
-        File file = new File(resourcePack + File.separator + getBasePath() + getPath() + ".png.mcmeta");
-        ByteArrayInputStream input = new ByteArrayInputStream(jsonElement.toString().getBytes(StandardCharsets.UTF_8));
-        FileUtils.writeFile(input, file);
+    public void handleResource(PackSink sink) throws IOException {
+        super.handleResource(sink);
+        sink.write(getBasePath() + getPath() + ".png.mcmeta", jsonElement.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String getContentHash() throws IOException {
+        return DigestUtils.sha1Hex(super.getContentHash() + jsonElement);
     }
 
     @Override
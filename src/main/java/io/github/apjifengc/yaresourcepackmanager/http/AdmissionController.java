@@ -0,0 +1,143 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+/**
+ * The admission controller of the pack downloads. <br/>
+ * It limits the number of downloads at the same time by the health of the game server. The limit is halved every
+ * time the server is found lagging, and it grows by one every time the server is found healthy again, until the
+ * max number of downloads. A download which can't start waits for a free slot until the queue timeout.
+ *
+ * @author APJifengc
+ */
+public class AdmissionController {
+    private int maxTransfers;
+    private double minTps;
+    private double maxMspt;
+    private long queueTimeout;
+    private int limit;
+    private int active;
+    private boolean healthy = true;
+    private double tps = 20;
+    private double mspt;
+
+    /**
+     * Create a new admission controller.
+     *
+     * @param maxTransfers The max number of downloads at the same time when the server is healthy.
+     * @param minTps       The server is lagging when the TPS is lower than this.
+     * @param maxMspt      The server is lagging when a tick takes longer than this, in milliseconds.
+     * @param queueTimeout The time a download can wait for a free slot, in milliseconds.
+     */
+    public AdmissionController(int maxTransfers, double minTps, double maxMspt, long queueTimeout) {
+        setLimits(maxTransfers, minTps, maxMspt, queueTimeout);
+        this.limit = this.maxTransfers;
+    }
+
+    /**
+     * Change the limits.
+     *
+     * @param maxTransfers The max number of downloads at the same time when the server is healthy.
+     * @param minTps       The server is lagging when the TPS is lower than this.
+     * @param maxMspt      The server is lagging when a tick takes longer than this, in milliseconds.
+     * @param queueTimeout The time a download can wait for a free slot, in milliseconds.
+     */
+    public synchronized void setLimits(int maxTransfers, double minTps, double maxMspt, long queueTimeout) {
+        this.maxTransfers = Math.max(1, maxTransfers);
+        this.minTps = minTps;
+        this.maxMspt = maxMspt;
+        this.queueTimeout = Math.max(0, queueTimeout);
+        this.limit = Math.min(limit, this.maxTransfers);
+        notifyAll();
+    }
+
+    /**
+     * Update the health of the server, the limit is changed by it.
+     *
+     * @param tps  The TPS now.
+     * @param mspt The milliseconds per tick now, or a negative number if it is unknown.
+     */
+    public synchronized void update(double tps, double mspt) {
+        this.tps = tps;
+        this.mspt = mspt;
+        healthy = tps >= minTps && (mspt < 0 || mspt <= maxMspt);
+        if (healthy) {
+            limit = Math.min(maxTransfers, limit + 1);
+            notifyAll();
+        } else {
+            limit = Math.max(1, limit / 2);
+        }
+    }
+
+    /**
+     * Start a download if there is a free slot.
+     *
+     * @return If the download can start.
+     */
+    public synchronized boolean tryAcquire() {
+        if (active >= limit) return false;
+        active++;
+        return true;
+    }
+
+    /**
+     * Wait for a free slot to start a download, until the queue timeout.
+     *
+     * @return If the download can start.
+     * @throws InterruptedException Throw when the thread is interrupted while waiting.
+     */
+    public synchronized boolean acquire() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + queueTimeout;
+        while (active >= limit) {
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) return false;
+            wait(wait);
+        }
+        active++;
+        return true;
+    }
+
+    /**
+     * Finish a download, its slot is freed.
+     */
+    public synchronized void release() {
+        if (active > 0) active--;
+        notifyAll();
+    }
+
+    public synchronized long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Get the number of downloads which can start now.
+     *
+     * @return The number of free slots.
+     */
+    public synchronized int getAvailable() {
+        return Math.max(0, limit - active);
+    }
+
+    public synchronized int getLimit() {
+        return limit;
+    }
+
+    public synchronized int getActive() {
+        return active;
+    }
+
+    /**
+     * Check if the server was healthy when it was updated last time.
+     *
+     * @return If the server is healthy.
+     */
+    public synchronized boolean isHealthy() {
+        return healthy;
+    }
+
+    public synchronized double getTps() {
+        return tps;
+    }
+
+    public synchronized double getMspt() {
+        return mspt;
+    }
+}
@@ -0,0 +1,205 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+/**
+ * The token bucket bandwidth limiter of the pack downloads. <br/>
+ * There is a global limit shared by all downloads, and a limit of each download. Both buckets can hold up to the
+ * burst allowance, so a download can go faster than the limit for a short time. The limits can be changed at
+ * any time, they take effect on the downloads in progress too. <br/>
+ * Only the bytes of the pack are limited, the headers and the short texts are not.
+ *
+ * @author APJifengc
+ */
+public class BandwidthLimiter {
+    /**
+     * The smallest number of bytes granted at once, so the connections are not written byte by byte.
+     */
+    private static final int MIN_GRANT = 4096;
+
+    private long globalRate;
+    private long transferRate;
+    private long burst;
+    private double globalTokens;
+    private long globalTime = System.nanoTime();
+    private long windowStart = System.nanoTime();
+    private long windowBytes;
+    private long currentRate;
+
+    /**
+     * Create a new bandwidth limiter.
+     *
+     * @param globalRate   The max bytes per second of all downloads, or {@code 0} for no limit.
+     * @param transferRate The max bytes per second of each download, or {@code 0} for no limit.
+     * @param burst        The max bytes which can be sent faster than the limits. If it is not positive, one second
+     *                     of the limit is used.
+     */
+    public BandwidthLimiter(long globalRate, long transferRate, long burst) {
+        setLimits(globalRate, transferRate, burst);
+        this.globalTokens = capacity(this.globalRate);
+    }
+
+    /**
+     * Change the limits, it takes effect on the downloads in progress too.
+     *
+     * @param globalRate   The max bytes per second of all downloads, or {@code 0} for no limit.
+     * @param transferRate The max bytes per second of each download, or {@code 0} for no limit.
+     * @param burst        The max bytes which can be sent faster than the limits. If it is not positive, one second
+     *                     of the limit is used.
+     */
+    public synchronized void setLimits(long globalRate, long transferRate, long burst) {
+        this.globalRate = Math.max(0, globalRate);
+        this.transferRate = Math.max(0, transferRate);
+        this.burst = Math.max(0, burst);
+        this.globalTokens = Math.min(globalTokens, capacity(this.globalRate));
+    }
+
+    public synchronized long getGlobalRate() {
+        return globalRate;
+    }
+
+    public synchronized long getTransferRate() {
+        return transferRate;
+    }
+
+    public synchronized long getBurst() {
+        return burst;
+    }
+
+    /**
+     * Get the bytes per second sent by all downloads now. It is measured every second.
+     *
+     * @return The bytes per second.
+     */
+    public synchronized long getCurrentRate() {
+        roll(System.nanoTime());
+        return currentRate;
+    }
+
+    /**
+     * Start limiting a new download.
+     *
+     * @return The bucket of the download.
+     */
+    public Transfer newTransfer() {
+        return new Transfer();
+    }
+
+    private double capacity(long rate) {
+        return burst > 0 ? burst : rate;
+    }
+
+    private void roll(long now) {
+        long elapsed = now - windowStart;
+        if (elapsed < 1_000_000_000L) return;
+        currentRate = windowBytes * 1_000_000_000L / elapsed;
+        windowStart = now;
+        windowBytes = 0;
+    }
+
+    /**
+     * The bucket of a download.
+     */
+    public class Transfer {
+        private double tokens;
+        private long time = System.nanoTime();
+
+        private Transfer() {
+            synchronized (BandwidthLimiter.this) {
+                tokens = capacity(transferRate);
+            }
+        }
+
+        /**
+         * Take bytes from the buckets without waiting.
+         *
+         * @param max The max number of bytes to send.
+         * @return The number of bytes which can be sent now, it can be {@code 0}.
+         */
+        public int acquire(int max) {
+            synchronized (BandwidthLimiter.this) {
+                long now = System.nanoTime();
+                refill(now);
+                double available = max;
+                if (globalRate > 0) available = Math.min(available, globalTokens);
+                if (transferRate > 0) available = Math.min(available, tokens);
+                int grant = (int) available;
+                if (grant <= 0 || grant < getMinGrant(max)) return 0;
+                if (globalRate > 0) globalTokens -= grant;
+                if (transferRate > 0) tokens -= grant;
+                roll(now);
+                windowBytes += grant;
+                return grant;
+            }
+        }
+
+        /**
+         * Take bytes from the buckets, wait until some bytes can be sent.
+         *
+         * @param max The max number of bytes to send.
+         * @return The number of bytes which can be sent now, it is positive if max is positive.
+         * @throws InterruptedException Throw when the thread is interrupted while waiting.
+         */
+        public int acquireBlocking(int max) throws InterruptedException {
+            if (max <= 0) return 0;
+            while (true) {
+                int grant = acquire(max);
+                if (grant > 0) return grant;
+                long delay = getDelayNanos(max);
+                Thread.sleep(Math.max(1, delay / 1_000_000L), (int) (delay % 1_000_000L));
+            }
+        }
+
+        /**
+         * Give back the bytes which were taken but not sent.
+         *
+         * @param bytes The number of bytes.
+         */
+        public void refund(int bytes) {
+            if (bytes <= 0) return;
+            synchronized (BandwidthLimiter.this) {
+                if (globalRate > 0) globalTokens = Math.min(capacity(globalRate), globalTokens + bytes);
+                if (transferRate > 0) tokens = Math.min(capacity(transferRate), tokens + bytes);
+                windowBytes = Math.max(0, windowBytes - bytes);
+            }
+        }
+
+        /**
+         * Get the time to wait until some bytes can be sent.
+         *
+         * @param max The max number of bytes to send.
+         * @return The time in nanoseconds.
+         */
+        public long getDelayNanos(int max) {
+            synchronized (BandwidthLimiter.this) {
+                refill(System.nanoTime());
+                double need = getMinGrant(max);
+                long delay = 0;
+                if (globalRate > 0 && globalTokens < need) {
+                    delay = (long) ((need - globalTokens) * 1_000_000_000L / globalRate);
+                }
+                if (transferRate > 0 && tokens < need) {
+                    delay = Math.max(delay, (long) ((need - tokens) * 1_000_000_000L / transferRate));
+                }
+                return delay;
+            }
+        }
+
+        private int getMinGrant(int max) {
+            int min = Math.min(max, MIN_GRANT);
+            if (globalRate > 0) min = (int) Math.min(min, capacity(globalRate));
+            if (transferRate > 0) min = (int) Math.min(min, capacity(transferRate));
+            return Math.max(1, min);
+        }
+
+        private void refill(long now) {
+            if (globalRate > 0) {
+                globalTokens = Math.min(capacity(globalRate),
+                        globalTokens + (now - globalTime) * (double) globalRate / 1_000_000_000L);
+            }
+            globalTime = now;
+            if (transferRate > 0) {
+                tokens = Math.min(capacity(transferRate), tokens + (now - time) * (double) transferRate / 1_000_000_000L);
+            }
+            time = now;
+        }
+    }
+}
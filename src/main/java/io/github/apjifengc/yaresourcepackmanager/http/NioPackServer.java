@@ -0,0 +1,474 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking pack server. <br/>
+ * Different from NanoHTTPD, which starts a thread for every connection, all connections are served by a fixed
+ * number of I/O threads with selectors, so a lot of players joining at the same time doesn't create a lot of
+ * threads in the game server. <br/>
+ * The body is written from the shared mapped buffer of the pack, or with {@link FileChannel#transferTo} if the
+ * pack can't be mapped. Connections are kept alive for a limited number of requests and closed when they are idle.
+ * <br/>
+ * A connection limited by the {@link BandwidthLimiter} or waiting for the {@link AdmissionController} is not
+ * selected until it can send again, so it never blocks the I/O thread.
+ *
+ * @author APJifengc
+ */
+public class NioPackServer implements PackServer {
+    private static final int MAX_HEADER_SIZE = 8192;
+    private static final byte[] SERVICE_UNAVAILABLE = ("HTTP/1.1 503 Service Unavailable\r\n" +
+            "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private final Logger logger;
+    private final int port;
+    private final PackHandler handler;
+    private final int ioThreads;
+    private final int backlog;
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final int maxRequests;
+    private final AtomicInteger connections = new AtomicInteger();
+    private ServerSocketChannel server;
+    private Worker[] workers;
+    private int nextWorker;
+    private volatile boolean running;
+
+    /**
+     * Create a new NIO pack server.
+     *
+     * @param logger         The logger.
+     * @param port           The port to publish the pack.
+     * @param handler        The handler of the requests.
+     * @param ioThreads      The number of I/O threads. If it is not positive, the number of available processors
+     *                       will be used, but not more than 4.
+     * @param backlog        The max number of connections waiting to be accepted.
+     * @param maxConnections The max number of open connections, new connections get 503 when it is reached.
+     * @param idleTimeout    The time in milliseconds a connection can send or receive nothing before it is closed.
+     * @param maxRequests    The max number of requests on one keep-alive connection.
+     */
+    public NioPackServer(Logger logger, int port, PackHandler handler, int ioThreads, int backlog,
+                         int maxConnections, long idleTimeout, int maxRequests) {
+        this.logger = logger;
+        this.port = port;
+        this.handler = handler;
+        this.ioThreads = ioThreads > 0 ? ioThreads : Math.min(4, Runtime.getRuntime().availableProcessors());
+        this.backlog = backlog;
+        this.maxConnections = maxConnections;
+        this.idleTimeout = idleTimeout;
+        this.maxRequests = Math.max(1, maxRequests);
+    }
+
+    @Override
+    public synchronized void startService() throws IOException {
+        if (running) return;
+        logger.info("Resourcepack service starting...");
+        server = ServerSocketChannel.open();
+        try {
+            server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            server.bind(new InetSocketAddress(port), backlog);
+            server.configureBlocking(false);
+            workers = new Worker[ioThreads];
+            for (int i = 0; i < ioThreads; i++) workers[i] = new Worker(i);
+            server.register(workers[0].selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            if (workers != null) {
+                for (Worker worker : workers) if (worker != null) worker.selector.close();
+            }
+            throw e;
+        }
+        running = true;
+        for (Worker worker : workers) worker.thread.start();
+        logger.info("Resourcepack service started.");
+    }
+
+    @Override
+    public synchronized void stopService() {
+        if (!running) return;
+        logger.info("Resourcepack service stopping...");
+        running = false;
+        for (Worker worker : workers) worker.selector.wakeup();
+        for (Worker worker : workers) {
+            try {
+                worker.thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        try {
+            server.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to close the server socket.", e);
+        }
+        logger.info("Resourcepack service stopped.");
+    }
+
+    /**
+     * Get the port the server listens on.
+     *
+     * @return The port, it is the port picked by the system if the server was created with port 0.
+     */
+    public synchronized int getPort() {
+        return running ? server.socket().getLocalPort() : port;
+    }
+
+    /**
+     * Get the number of open connections.
+     *
+     * @return The number of open connections.
+     */
+    public int getConnections() {
+        return connections.get();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = server.accept()) != null) {
+            if (connections.incrementAndGet() > maxConnections) {
+                connections.decrementAndGet();
+                try {
+                    channel.configureBlocking(false);
+                    channel.write(ByteBuffer.wrap(SERVICE_UNAVAILABLE));
+                } finally {
+                    channel.close();
+                }
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Worker worker = workers[nextWorker];
+            nextWorker = (nextWorker + 1) % workers.length;
+            worker.pending.add(channel);
+            worker.selector.wakeup();
+        }
+    }
+
+    /**
+     * An I/O thread, it serves its connections with a selector.
+     */
+    private class Worker implements Runnable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+
+        private Worker(int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "YaResourcepackManager-IO-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                long timeout = 1000;
+                while (running) {
+                    selector.select(timeout);
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        Connection connection = new Connection(channel);
+                        try {
+                            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                        } catch (IOException e) {
+                            connection.close();
+                        }
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        try {
+                            if (key.isAcceptable()) {
+                                accept();
+                                continue;
+                            }
+                            Connection connection = (Connection) key.attachment();
+                            try {
+                                if (key.isReadable()) connection.read();
+                                else if (key.isWritable()) connection.write();
+                            } catch (IOException e) {
+                                connection.close();
+                            }
+                        } catch (CancelledKeyException ignored) {
+                        } catch (IOException e) {
+                            logger.log(Level.WARNING, "Failed to accept a connection.", e);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                    long now = System.currentTimeMillis();
+                    timeout = 1000;
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.attachment() instanceof Connection) {
+                            Connection connection = (Connection) key.attachment();
+                            if (connection.resumeAt > 0) {
+                                if (connection.resumeAt <= now) connection.resume();
+                                else timeout = Math.min(timeout, connection.resumeAt - now);
+                            } else if (now - connection.lastActive > idleTimeout) {
+                                connection.close();
+                            }
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "The resourcepack I/O thread stopped unexpectedly.", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    if (key.attachment() instanceof Connection) ((Connection) key.attachment()).close();
+                }
+                SocketChannel channel;
+                while ((channel = pending.poll()) != null) new Connection(channel).close();
+                try {
+                    selector.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * A connection of a client.
+     */
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer input = ByteBuffer.allocate(MAX_HEADER_SIZE);
+        private SelectionKey key;
+        private long lastActive = System.currentTimeMillis();
+        private int requests;
+        private boolean keepAlive;
+        private PackResponse response;
+        private ByteBuffer head;
+        private ByteBuffer body;
+        private FileChannel file;
+        private long filePosition;
+        private long fileRemaining;
+        private long resumeAt;
+        private boolean throttled;
+        private PackResponse queued;
+        private boolean queuedKeepAlive;
+        private long queuedSince;
+        private boolean closed;
+
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private void read() throws IOException {
+            int count = channel.read(input);
+            if (count < 0) {
+                close();
+                return;
+            }
+            if (count > 0) lastActive = System.currentTimeMillis();
+            parse();
+        }
+
+        /**
+         * Parse a request in the input buffer if the headers are complete, and start to send the response.
+         */
+        private void parse() throws IOException {
+            int end = findHeaderEnd();
+            if (end < 0) {
+                if (!input.hasRemaining()) respond(PackResponse.text(400, "400"), false);
+                return;
+            }
+            String request = new String(input.array(), 0, end, StandardCharsets.ISO_8859_1);
+            input.flip();
+            input.position(end + 4);
+            input.compact();
+            String[] lines = request.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+                respond(PackResponse.text(400, "400"), false);
+                return;
+            }
+            Map<String, String> headers = new HashMap<>();
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) continue;
+                headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+            String connection = headers.getOrDefault("connection", "").toLowerCase(Locale.ROOT);
+            boolean keepAlive = requestLine[2].equals("HTTP/1.1") ? !connection.contains("close")
+                    : connection.contains("keep-alive");
+            // The pack requests have no body, so a connection with a request body can't be used again.
+            String length = headers.get("content-length");
+            if (headers.containsKey("transfer-encoding") || (length != null && !length.trim().equals("0"))) {
+                keepAlive = false;
+            }
+            requests++;
+            respond(handler.handle(requestLine[0], requestLine[1], headers), keepAlive && requests < maxRequests);
+        }
+
+        private int findHeaderEnd() {
+            byte[] data = input.array();
+            for (int i = 0; i + 3 < input.position(); i++) {
+                if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') return i;
+            }
+            return -1;
+        }
+
+        private void respond(PackResponse response, boolean keepAlive) throws IOException {
+            if (response.getPack() != null && !response.tryAdmit()) {
+                // Wait for the admission controller without being selected.
+                long now = System.currentTimeMillis();
+                if (queuedSince == 0) queuedSince = now;
+                long timeout = response.getAdmission().getQueueTimeout();
+                if (now - queuedSince >= timeout) {
+                    queuedSince = 0;
+                    response.close();
+                    respond(PackResponse.unavailable(Math.max(1, timeout / 1000)), false);
+                    return;
+                }
+                queued = response;
+                queuedKeepAlive = keepAlive;
+                resumeAt = now + 50;
+                key.interestOps(0);
+                return;
+            }
+            queuedSince = 0;
+            this.response = response;
+            this.keepAlive = keepAlive;
+            StringBuilder builder = new StringBuilder();
+            builder.append("HTTP/1.1 ").append(response.getStatus()).append(' ').append(response.getReason())
+                    .append("\r\n");
+            response.getHeaders().forEach((name, value) -> builder.append(name).append(": ").append(value)
+                    .append("\r\n"));
+            if (response.getLength() >= 0) builder.append("Content-Length: ").append(response.getLength())
+                    .append("\r\n");
+            builder.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n\r\n");
+            head = ByteBuffer.wrap(builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+            if (response.getPack() != null) {
+                try {
+                    body = response.getPack().getBuffer();
+                    body.position((int) response.getOffset());
+                    body.limit((int) (response.getOffset() + response.getLength()));
+                } catch (IOException e) {
+                    body = null;
+                    file = FileChannel.open(response.getPack().getFile().toPath(), StandardOpenOption.READ);
+                    filePosition = response.getOffset();
+                    fileRemaining = response.getLength();
+                }
+            } else if (response.getText() != null) {
+                body = ByteBuffer.wrap(response.getText());
+            }
+            key.interestOps(SelectionKey.OP_WRITE);
+            write();
+        }
+
+        private void write() throws IOException {
+            long written = 0;
+            throttled = false;
+            if (head.hasRemaining()) written += channel.write(head);
+            if (!head.hasRemaining()) {
+                if (body != null && body.hasRemaining()) {
+                    int granted = acquire(body.remaining());
+                    int limit = body.limit();
+                    body.limit(body.position() + granted);
+                    int count = channel.write(body);
+                    body.limit(limit);
+                    refund(granted - count);
+                    response.sent(count);
+                    written += count;
+                } else if (file != null && fileRemaining > 0) {
+                    int granted = acquire((int) Math.min(Integer.MAX_VALUE, fileRemaining));
+                    long count = granted > 0 ? file.transferTo(filePosition, granted, channel) : 0;
+                    refund((int) (granted - count));
+                    filePosition += count;
+                    fileRemaining -= count;
+                    response.sent(count);
+                    written += count;
+                }
+            }
+            if (written > 0) lastActive = System.currentTimeMillis();
+            if (head.hasRemaining() || (body != null && body.hasRemaining()) || (file != null && fileRemaining > 0)) {
+                if (throttled) {
+                    // Wait for the bandwidth limiter without being selected for writing.
+                    long delay = response.getTransfer().getDelayNanos(
+                            body != null ? body.remaining() : (int) Math.min(Integer.MAX_VALUE, fileRemaining));
+                    resumeAt = System.currentTimeMillis() + Math.max(1, delay / 1_000_000L);
+                    key.interestOps(0);
+                }
+                return;
+            }
+            finish();
+            if (!keepAlive) {
+                close();
+                return;
+            }
+            key.interestOps(SelectionKey.OP_READ);
+            if (input.position() > 0) parse();
+        }
+
+        private int acquire(int max) {
+            if (response == null || response.getTransfer() == null || response.getPack() == null) return max;
+            int granted = response.getTransfer().acquire(max);
+            if (granted == 0) throttled = true;
+            return granted;
+        }
+
+        private void refund(int bytes) {
+            if (response != null && response.getTransfer() != null) response.getTransfer().refund(bytes);
+        }
+
+        private void resume() {
+            resumeAt = 0;
+            try {
+                if (queued != null) {
+                    PackResponse response = queued;
+                    queued = null;
+                    respond(response, queuedKeepAlive);
+                } else {
+                    key.interestOps(SelectionKey.OP_WRITE);
+                }
+            } catch (CancelledKeyException | IOException e) {
+                close();
+            }
+        }
+
+        private void finish() {
+            if (response != null) response.close();
+            response = null;
+            head = null;
+            body = null;
+            if (file != null) {
+                try {
+                    file.close();
+                } catch (IOException ignored) {
+                }
+                file = null;
+            }
+        }
+
+        private void close() {
+            if (closed) return;
+            closed = true;
+            finish();
+            if (queued != null) queued.close();
+            queued = null;
+            if (key != null) key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            connections.decrementAndGet();
+        }
+    }
+}
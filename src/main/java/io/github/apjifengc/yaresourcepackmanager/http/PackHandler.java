@@ -0,0 +1,275 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * The handler of the pack requests, it doesn't depend on any HTTP server. <br/>
+ * Every response is made from one version of the pack, so a range never mixes the bytes of two versions.
+ * The SHA-1 of the pack is used as the ETag, so a client resuming a download of an old version with
+ * {@code If-Range} gets the whole new version instead. <br/>
+ * The build time is used as the Last-Modified date, and conditional requests of the current version are answered
+ * with 304 Not Modified, so proxies and mirrors can cache the pack. <br/>
+ * Every version kept by the store is served at {@code /pack/<sha1>.zip}, and the content of such a URL never
+ * changes, so it can be cached forever. {@code /pack.zip} is the current version. <br/>
+ * The {@code t} query parameter is the client token, it is only used to join the download metrics with the player.
+ *
+ * @author APJifengc
+ */
+public class PackHandler {
+    private static final long[] UNSATISFIABLE = new long[0];
+    private static final Pattern VERSION_PATH = Pattern.compile("/pack/([0-9a-fA-F]{40})\\.zip");
+    private static final String CURRENT_PATH = "/pack.zip";
+    private static final String TOKEN_PARAMETER = "t";
+    private static final DateTimeFormatter HTTP_DATE =
+            DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+    private final PackStore store;
+    private final BandwidthLimiter limiter;
+    private final AdmissionController admission;
+    private final TransferMetrics metrics;
+
+    /**
+     * Create a new pack handler.
+     *
+     * @param store The store of the published packs.
+     */
+    public PackHandler(PackStore store) {
+        this(store, null);
+    }
+
+    /**
+     * Create a new pack handler.
+     *
+     * @param store   The store of the published packs.
+     * @param limiter The bandwidth limiter of the downloads, or null if the downloads are not limited.
+     */
+    public PackHandler(PackStore store, BandwidthLimiter limiter) {
+        this(store, limiter, null);
+    }
+
+    /**
+     * Create a new pack handler.
+     *
+     * @param store     The store of the published packs.
+     * @param limiter   The bandwidth limiter of the downloads, or null if the downloads are not limited.
+     * @param admission The admission controller of the downloads, or null if the downloads are not limited.
+     */
+    public PackHandler(PackStore store, BandwidthLimiter limiter, AdmissionController admission) {
+        this(store, limiter, admission, null);
+    }
+
+    /**
+     * Create a new pack handler.
+     *
+     * @param store     The store of the published packs.
+     * @param limiter   The bandwidth limiter of the downloads, or null if the downloads are not limited.
+     * @param admission The admission controller of the downloads, or null if the downloads are not limited.
+     * @param metrics   The metrics of the downloads, or null if the downloads are not recorded.
+     */
+    public PackHandler(PackStore store, BandwidthLimiter limiter, AdmissionController admission,
+                       TransferMetrics metrics) {
+        this.store = store;
+        this.limiter = limiter;
+        this.admission = admission;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Handle a request.
+     *
+     * @param method  The request method.
+     * @param uri     The request URI, it can have a query string.
+     * @param headers The request headers, the names must be lower case.
+     * @return The response, it must be closed after it is sent.
+     */
+    public PackResponse handle(String method, String uri, Map<String, String> headers) {
+        String client = null;
+        int query = uri.indexOf('?');
+        if (query >= 0) {
+            client = getParameter(uri.substring(query + 1), TOKEN_PARAMETER);
+            uri = uri.substring(0, query);
+        }
+        if (!"GET".equals(method) && !"HEAD".equals(method)) {
+            PackResponse response = PackResponse.text(405, "405");
+            response.setHeader("Allow", "GET, HEAD");
+            return response;
+        }
+        boolean head = "HEAD".equals(method);
+        boolean immutable;
+        PublishedPack pack;
+        Matcher matcher = VERSION_PATH.matcher(uri);
+        if (matcher.matches()) {
+            immutable = true;
+            pack = store.acquire(matcher.group(1));
+        } else if (uri.equals("/") || uri.equals(CURRENT_PATH)) {
+            immutable = false;
+            pack = store.acquire();
+        } else {
+            return PackResponse.text(404, "404");
+        }
+        if (pack == null) return PackResponse.text(404, "404");
+        String cacheControl = immutable ? "public, max-age=31536000, immutable" : "no-cache";
+        String etag = getETag(pack);
+        String lastModified = getLastModified(pack);
+        long size = pack.getSize();
+        if (isNotModified(pack, headers)) {
+            store.release(pack);
+            // Like HEAD, the Content-Length of a 304 is the size of the whole pack. NanoHTTPD always sends one.
+            PackResponse response = PackResponse.empty(304, size);
+            setPackHeaders(response, etag, lastModified, cacheControl);
+            return response;
+        }
+        String range = headers.get("range");
+        String ifRange = headers.get("if-range");
+        if (range != null && (ifRange == null || ifRange.equals(etag) || ifRange.equals(lastModified))) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == UNSATISFIABLE) {
+                store.release(pack);
+                PackResponse response = PackResponse.text(416, "416");
+                response.setHeader("Content-Range", "bytes */" + size);
+                return response;
+            }
+            if (bounds != null) {
+                long length = bounds[1] - bounds[0] + 1;
+                PackResponse response = head ? PackResponse.empty(206, length)
+                        : PackResponse.pack(206, store, pack, bounds[0], length);
+                if (head) store.release(pack);
+                else limit(response, client);
+                setPackHeaders(response, etag, lastModified, cacheControl);
+                response.setHeader("Content-Range", "bytes " + bounds[0] + "-" + bounds[1] + "/" + size);
+                return response;
+            }
+        }
+        PackResponse response = head ? PackResponse.empty(200, size) : PackResponse.pack(200, store, pack, 0, size);
+        if (head) store.release(pack);
+        else limit(response, client);
+        setPackHeaders(response, etag, lastModified, cacheControl);
+        return response;
+    }
+
+    private void limit(PackResponse response, String client) {
+        if (limiter != null) response.setTransfer(limiter.newTransfer());
+        response.setAdmission(admission);
+        if (metrics != null) response.setRecord(metrics.start(client, response.getLength()));
+    }
+
+    private static String getParameter(String query, String name) {
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && parameter.substring(0, equals).equals(name)) return parameter.substring(equals + 1);
+        }
+        return null;
+    }
+
+    private static void setPackHeaders(PackResponse response, String etag, String lastModified,
+                                       String cacheControl) {
+        response.setHeader("Content-Type", "application/zip");
+        response.setHeader("Cache-Control", cacheControl);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setHeader("Last-Modified", lastModified);
+    }
+
+    /**
+     * Check if the client already has the pack, by the {@code If-None-Match} header, or the
+     * {@code If-Modified-Since} header if there is no {@code If-None-Match} header.
+     */
+    private static boolean isNotModified(PublishedPack pack, Map<String, String> headers) {
+        String ifNoneMatch = headers.get("if-none-match");
+        if (ifNoneMatch != null) {
+            String sha1 = pack.getSha1Hex();
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                if (tag.startsWith("W/")) tag = tag.substring(2);
+                if (tag.equals("*") || tag.equals("\"" + sha1 + "\"")) return true;
+            }
+            return false;
+        }
+        String ifModifiedSince = headers.get("if-modified-since");
+        if (ifModifiedSince == null) return false;
+        try {
+            long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toEpochSecond();
+            return pack.getBuildTime() / 1000 <= since;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the Last-Modified date of a pack.
+     *
+     * @param pack The pack.
+     * @return The date, it is the build time of the pack.
+     */
+    public static String getLastModified(PublishedPack pack) {
+        return HTTP_DATE.format(Instant.ofEpochMilli(pack.getBuildTime()));
+    }
+
+    /**
+     * Get the path of a version of the pack.
+     *
+     * @param pack The pack.
+     * @return The path, its content never changes.
+     */
+    public static String getPath(PublishedPack pack) {
+        return "/pack/" + pack.getSha1Hex() + ".zip";
+    }
+
+    /**
+     * Get the strong ETag of a pack.
+     *
+     * @param pack The pack.
+     * @return The ETag, it is the quoted SHA-1 of the pack.
+     */
+    public static String getETag(PublishedPack pack) {
+        return "\"" + pack.getSha1Hex() + "\"";
+    }
+
+    /**
+     * Parse a Range header. <br/>
+     * Only a single byte range is supported, the whole pack is sent for a request of many ranges.
+     *
+     * @param header The Range header.
+     * @param size   The size of the pack.
+     * @return The first and the last byte of the range, {@link #UNSATISFIABLE} if the range is out of the pack,
+     * or null if the header is invalid or has many ranges.
+     */
+    private static long[] parseRange(String header, long size) {
+        header = header.trim();
+        if (!header.startsWith("bytes=")) return null;
+        String spec = header.substring(6).trim();
+        if (spec.contains(",")) return null;
+        int dash = spec.indexOf('-');
+        if (dash < 0) return null;
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                if (last.isEmpty()) return null;
+                long suffix = Long.parseLong(last);
+                if (suffix < 0) return null;
+                if (suffix == 0 || size == 0) return UNSATISFIABLE;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+            long start = Long.parseLong(first);
+            long end = last.isEmpty() ? Long.MAX_VALUE : Long.parseLong(last);
+            if (start < 0 || end < start) return null;
+            if (start >= size) return UNSATISFIABLE;
+            return new long[]{start, Math.min(end, size - 1)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
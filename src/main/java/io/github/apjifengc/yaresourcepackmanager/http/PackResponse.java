@@ -0,0 +1,276 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * A response of the pack server, it doesn't depend on any HTTP server. <br/>
+ * The body is either a range of a published pack, a short text, or nothing for HEAD requests and 304 responses.
+ * The pack is acquired from the store, so the response must be closed after it is sent.
+ *
+ * @author APJifengc
+ */
+public class PackResponse implements Closeable {
+    private final int status;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private final PackStore store;
+    private final PublishedPack pack;
+    private final long offset;
+    private final long length;
+    private final byte[] text;
+    private BandwidthLimiter.Transfer transfer;
+    private AdmissionController admission;
+    private TransferMetrics.Record record;
+    private boolean admitted;
+    private boolean closed;
+
+    private PackResponse(int status, PackStore store, PublishedPack pack, long offset, long length, byte[] text) {
+        this.status = status;
+        this.store = store;
+        this.pack = pack;
+        this.offset = offset;
+        this.length = length;
+        this.text = text;
+    }
+
+    /**
+     * Create a response with a range of the pack as the body.
+     *
+     * @param status The status code.
+     * @param store  The store the pack was acquired from.
+     * @param pack   The pack.
+     * @param offset The offset of the range.
+     * @param length The length of the range.
+     * @return The response.
+     */
+    public static PackResponse pack(int status, PackStore store, PublishedPack pack, long offset, long length) {
+        PackResponse response = new PackResponse(status, store, pack, offset, length, null);
+        response.setHeader("Content-Type", "application/zip");
+        return response;
+    }
+
+    /**
+     * Create a response without a body.
+     *
+     * @param status The status code.
+     * @param length The value of the Content-Length header, or {@code -1} if there is no such header.
+     * @return The response.
+     */
+    public static PackResponse empty(int status, long length) {
+        return new PackResponse(status, null, null, 0, length, null);
+    }
+
+    /**
+     * Create a response with a text as the body.
+     *
+     * @param status The status code.
+     * @param text   The text.
+     * @return The response.
+     */
+    public static PackResponse text(int status, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        PackResponse response = new PackResponse(status, null, null, 0, data.length, data);
+        response.setHeader("Content-Type", "text/plain; charset=utf-8");
+        return response;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Get the reason phrase of the status code.
+     *
+     * @return The reason phrase.
+     */
+    public String getReason() {
+        switch (status) {
+            case 200:
+                return "OK";
+            case 206:
+                return "Partial Content";
+            case 304:
+                return "Not Modified";
+            case 400:
+                return "Bad Request";
+            case 404:
+                return "Not Found";
+            case 405:
+                return "Method Not Allowed";
+            case 416:
+                return "Range Not Satisfiable";
+            case 503:
+                return "Service Unavailable";
+            default:
+                return "Internal Server Error";
+        }
+    }
+
+    /**
+     * Set a header of the response.
+     *
+     * @param name  The header's name.
+     * @param value The header's value.
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    /**
+     * Get the headers of the response, the Content-Length header is not included.
+     *
+     * @return The headers.
+     */
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Get the pack of the body.
+     *
+     * @return The pack, or null if the body is a text.
+     */
+    public PublishedPack getPack() {
+        return pack;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the length of the body, it is the value of the Content-Length header.
+     *
+     * @return The length, or {@code -1} if there is no Content-Length header.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Check if the response has a body.
+     *
+     * @return If the response has a body.
+     */
+    public boolean hasBody() {
+        return pack != null || text != null;
+    }
+
+    /**
+     * Get the bandwidth limit of the body.
+     *
+     * @return The bucket of the download, or null if the body is not limited.
+     */
+    public BandwidthLimiter.Transfer getTransfer() {
+        return transfer;
+    }
+
+    void setTransfer(BandwidthLimiter.Transfer transfer) {
+        this.transfer = transfer;
+    }
+
+    void setAdmission(AdmissionController admission) {
+        this.admission = admission;
+    }
+
+    void setRecord(TransferMetrics.Record record) {
+        this.record = record;
+    }
+
+    /**
+     * Get the metrics record of the body.
+     *
+     * @return The record, or null if the download is not recorded.
+     */
+    public TransferMetrics.Record getRecord() {
+        return record;
+    }
+
+    /**
+     * Count some bytes of the body as sent, for the metrics of the download.
+     *
+     * @param bytes The bytes.
+     */
+    public void sent(long bytes) {
+        if (record != null) record.sent(bytes);
+    }
+
+    /**
+     * Start sending the body if the admission controller has a free slot.
+     *
+     * @return If the body can be sent now.
+     */
+    public synchronized boolean tryAdmit() {
+        if (admission == null || admitted) return true;
+        admitted = admission.tryAcquire();
+        return admitted;
+    }
+
+    /**
+     * Wait for the admission controller to start sending the body, until the queue timeout.
+     *
+     * @return If the body can be sent now.
+     * @throws InterruptedException Throw when the thread is interrupted while waiting.
+     */
+    public boolean awaitAdmission() throws InterruptedException {
+        AdmissionController admission;
+        synchronized (this) {
+            if (this.admission == null || admitted) return true;
+            admission = this.admission;
+        }
+        boolean result = admission.acquire();
+        synchronized (this) {
+            admitted = result;
+            if (result && closed) admission.release();
+        }
+        return result;
+    }
+
+    /**
+     * Get the admission controller of the body.
+     *
+     * @return The admission controller, or null if the body is not limited.
+     */
+    public AdmissionController getAdmission() {
+        return admission;
+    }
+
+    /**
+     * Create a 503 response, for the downloads which waited too long for the admission controller.
+     *
+     * @param retryAfter The seconds the client should wait before retrying.
+     * @return The response.
+     */
+    public static PackResponse unavailable(long retryAfter) {
+        PackResponse response = text(503, "503");
+        response.setHeader("Retry-After", String.valueOf(retryAfter));
+        return response;
+    }
+
+    /**
+     * Get the text of the body.
+     *
+     * @return The text, or null if the body is a pack.
+     */
+    public byte[] getText() {
+        return text;
+    }
+
+    /**
+     * Release the pack of the response and finish its metrics record. It can be called many times.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        if (pack != null) store.release(pack);
+        if (admitted) admission.release();
+        if (record != null) record.finish();
+    }
+}
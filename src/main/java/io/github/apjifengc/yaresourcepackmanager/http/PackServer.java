@@ -0,0 +1,23 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import java.io.IOException;
+
+/**
+ * An HTTP server which publishes the resourcepack. <br/>
+ * The requests are handled by a {@link PackHandler}, the server only moves the bytes.
+ *
+ * @author APJifengc
+ */
+public interface PackServer {
+    /**
+     * Start the server.
+     *
+     * @throws IOException Throw when the server can't be started, usually because the port is used.
+     */
+    void startService() throws IOException;
+
+    /**
+     * Stop the server. All connections are closed.
+     */
+    void stopService();
+}
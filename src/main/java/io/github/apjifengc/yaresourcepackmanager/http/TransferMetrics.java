@@ -0,0 +1,226 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import io.github.apjifengc.yaresourcepackmanager.util.Histogram;
+
+/**
+ * The metrics of the pack downloads. <br/>
+ * Every download of a pack body is a {@link Record}, it counts the bytes sent and it is finished when the response
+ * is closed. A download is completed if all bytes of the body were sent, or else it is aborted. <br/>
+ * A download can carry the client token of the request, so the finished records can be joined with the player
+ * who downloaded it, see {@link #setListener(Consumer)}.
+ *
+ * @author APJifengc
+ */
+public class TransferMetrics {
+    private static final int SAMPLES = 1024;
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong aborted = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final Histogram durations = new Histogram(SAMPLES);
+    private final Histogram throughputs = new Histogram(SAMPLES);
+    private volatile Consumer<Record> listener;
+
+    /**
+     * Set the listener of the finished downloads. It is called on the thread that sent the download.
+     *
+     * @param listener The listener, or null to remove it.
+     */
+    public void setListener(Consumer<Record> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Start recording a download.
+     *
+     * @param client The client token of the request, or null if the request has no token.
+     * @param length The length of the body.
+     * @return The record.
+     */
+    public Record start(String client, long length) {
+        int concurrency = active.incrementAndGet();
+        peak.accumulateAndGet(concurrency, Math::max);
+        return new Record(client, length, concurrency);
+    }
+
+    private void finish(Record record) {
+        active.decrementAndGet();
+        bytes.addAndGet(record.sent);
+        if (record.isCompleted()) {
+            completed.incrementAndGet();
+            durations.add(record.getDuration());
+            throughputs.add(record.getThroughput());
+        } else {
+            aborted.incrementAndGet();
+        }
+        Consumer<Record> listener = this.listener;
+        if (listener != null) listener.accept(record);
+    }
+
+    /**
+     * Get the number of downloads being sent now.
+     *
+     * @return The number of downloads.
+     */
+    public int getActive() {
+        return active.get();
+    }
+
+    /**
+     * Get the max number of downloads sent at the same time.
+     *
+     * @return The number of downloads.
+     */
+    public int getPeak() {
+        return peak.get();
+    }
+
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    public long getAborted() {
+        return aborted.get();
+    }
+
+    /**
+     * Get the bytes sent by all finished downloads.
+     *
+     * @return The bytes.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Get the histogram of the durations of the completed downloads.
+     *
+     * @return The histogram in milliseconds.
+     */
+    public Histogram getDurations() {
+        return durations;
+    }
+
+    /**
+     * Get the histogram of the throughputs of the completed downloads.
+     *
+     * @return The histogram in bytes per second.
+     */
+    public Histogram getThroughputs() {
+        return throughputs;
+    }
+
+    /**
+     * A download being recorded.
+     */
+    public class Record {
+        private final String client;
+        private final long length;
+        private final int concurrency;
+        private long startTime;
+        private long endTime;
+        private volatile long sent;
+        private boolean finished;
+
+        private Record(String client, long length, int concurrency) {
+            this.client = client;
+            this.length = length;
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * Count some bytes of the body as sent. The clock starts at the first bytes, so the time waiting for the
+         * admission controller is not counted.
+         *
+         * @param bytes The bytes.
+         */
+        public synchronized void sent(long bytes) {
+            if (bytes <= 0 || finished) return;
+            if (startTime == 0) startTime = System.currentTimeMillis();
+            sent += bytes;
+        }
+
+        /**
+         * Finish the record. It can be called many times.
+         */
+        public void finish() {
+            synchronized (this) {
+                if (finished) return;
+                finished = true;
+                endTime = System.currentTimeMillis();
+                if (startTime == 0) startTime = endTime;
+            }
+            TransferMetrics.this.finish(this);
+        }
+
+        /**
+         * Get the client token of the request.
+         *
+         * @return The token, or null if the request has no token.
+         */
+        public String getClient() {
+            return client;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        /**
+         * Get the number of downloads being sent when this download started, including itself.
+         *
+         * @return The number of downloads.
+         */
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        /**
+         * Get the time the first bytes were sent.
+         *
+         * @return The time in milliseconds, or {@code 0} if nothing is sent yet.
+         */
+        public synchronized long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Get the duration of the download.
+         *
+         * @return The duration in milliseconds, or {@code -1} if it is not finished.
+         */
+        public synchronized long getDuration() {
+            return finished ? endTime - startTime : -1;
+        }
+
+        /**
+         * Get the average throughput of the download.
+         *
+         * @return The throughput in bytes per second, or {@code -1} if it is not finished.
+         */
+        public long getThroughput() {
+            long duration = getDuration();
+            if (duration < 0) return -1;
+            return sent * 1000 / Math.max(1, duration);
+        }
+
+        /**
+         * Check if all bytes of the body were sent.
+         *
+         * @return If the download is completed.
+         */
+        public synchronized boolean isCompleted() {
+            return finished && sent >= length;
+        }
+    }
+}
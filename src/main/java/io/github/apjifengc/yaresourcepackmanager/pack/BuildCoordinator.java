@@ -0,0 +1,151 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * The coordinator of the resourcepack builds. <br/>
+ * Only one build runs at the same time. Build requests are debounced, so a burst of requests is built only once,
+ * and a request made while a build is running supersedes it: the running build is cancelled through its
+ * {@link BuildToken} and a new build starts after the debounce window. <br/>
+ * Every request returns a future of the next published pack, so callers can wait for it without blocking.
+ *
+ * @author APJifengc
+ */
+public class BuildCoordinator implements AutoCloseable {
+    private final Logger logger;
+    private final Builder builder;
+    private final ScheduledExecutorService scheduler;
+    private volatile long debounce;
+    private CompletableFuture<PublishedPack> next = new CompletableFuture<>();
+    private ScheduledFuture<?> scheduled;
+    private BuildToken running;
+    private boolean superseded;
+
+    /**
+     * Create a new build coordinator.
+     *
+     * @param logger   The logger.
+     * @param debounce The debounce window in milliseconds.
+     * @param builder  The function to build and publish the pack.
+     */
+    public BuildCoordinator(Logger logger, long debounce, Builder builder) {
+        this.logger = logger;
+        this.debounce = debounce;
+        this.builder = builder;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "YaResourcepackManager-Coordinator");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Set the debounce window. It is used from the next request.
+     *
+     * @param debounce The debounce window in milliseconds.
+     */
+    public void setDebounce(long debounce) {
+        this.debounce = debounce;
+    }
+
+    /**
+     * Request a build. <br/>
+     * The build starts after the debounce window, and it will be delayed again if another request comes during
+     * the window. If a build is running now, it will be superseded.
+     *
+     * @return The future of the next published pack.
+     */
+    public synchronized CompletableFuture<PublishedPack> request() {
+        if (scheduler.isShutdown()) {
+            CompletableFuture<PublishedPack> future = new CompletableFuture<>();
+            future.completeExceptionally(new IOException("The build coordinator is closed."));
+            return future;
+        }
+        if (scheduled != null) scheduled.cancel(false);
+        scheduled = scheduler.schedule(this::run, Math.max(0, debounce), TimeUnit.MILLISECONDS);
+        if (running != null && !superseded) {
+            superseded = true;
+            running.cancel();
+        }
+        return next;
+    }
+
+    /**
+     * Check if a build is running or waiting to run.
+     *
+     * @return If a build is running or waiting to run.
+     */
+    public synchronized boolean isBuilding() {
+        return running != null || scheduled != null;
+    }
+
+    private void run() {
+        CompletableFuture<PublishedPack> future;
+        BuildToken token = new BuildToken();
+        synchronized (this) {
+            scheduled = null;
+            future = next;
+            next = new CompletableFuture<>();
+            running = token;
+            superseded = false;
+        }
+        PublishedPack pack = null;
+        Exception failure = null;
+        try {
+            pack = builder.build(token);
+        } catch (Exception e) {
+            failure = e;
+        }
+        boolean wasSuperseded;
+        CompletableFuture<PublishedPack> following;
+        synchronized (this) {
+            running = null;
+            wasSuperseded = superseded;
+            following = next;
+        }
+        if (failure == null) {
+            future.complete(pack);
+        } else if (wasSuperseded) {
+            logger.info("The build was superseded by a newer request.");
+            following.whenComplete((result, e) -> {
+                if (e != null) future.completeExceptionally(e);
+                else future.complete(result);
+            });
+        } else {
+            future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Stop the coordinator, the running build will be cancelled.
+     */
+    @Override
+    public synchronized void close() {
+        if (scheduled != null) scheduled.cancel(false);
+        if (running != null) running.cancel();
+        scheduler.shutdown();
+        next.completeExceptionally(new IOException("The build coordinator is closed."));
+    }
+
+    /**
+     * The function to build and publish the pack.
+     */
+    @FunctionalInterface
+    public interface Builder {
+        /**
+         * Build and publish the pack. <br/>
+         * The token is cancelled when the build is superseded, so it should stop as soon as possible then.
+         *
+         * @param token The cancellation token of the build.
+         * @return The published pack.
+         * @throws Exception Throw when the build failed.
+         */
+        PublishedPack build(BuildToken token) throws Exception;
+    }
+}
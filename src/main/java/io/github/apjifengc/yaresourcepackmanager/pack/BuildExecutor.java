@@ -0,0 +1,102 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+/**
+ * A bounded fork-join pool to generate the components of a resourcepack in parallel.
+ *
+ * @author APJifengc
+ */
+public class BuildExecutor implements AutoCloseable {
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a new build executor.
+     *
+     * @param parallelism The max number of components generated at the same time.
+     *                    If it is not positive, the number of available processors will be used.
+     */
+    public BuildExecutor(int parallelism) {
+        if (parallelism <= 0) parallelism = Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("YaResourcepackManager-Build-" + thread.getPoolIndex());
+            thread.setContextClassLoader(BuildExecutor.class.getClassLoader());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Get the parallelism of the executor.
+     *
+     * @return The parallelism.
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Run all the tasks and wait for them to complete. <br/>
+     * The token is checked before every task, so the tasks which are not started yet are skipped once the build is
+     * cancelled. The running tasks are never interrupted, they stop at their next check.
+     *
+     * @param tasks The tasks.
+     * @param token The cancellation token of the build.
+     * @throws IOException Throw when any of the tasks failed, or the build is cancelled. Other failures are added
+     *                     as suppressed exceptions.
+     */
+    public void invokeAll(List<BuildTask> tasks, BuildToken token) throws IOException {
+        token.check();
+        List<Future<Void>> futures = new ArrayList<>(tasks.size());
+        for (BuildTask task : tasks) {
+            futures.add(pool.submit(() -> {
+                token.check();
+                task.run();
+                return null;
+            }));
+        }
+        IOException exception = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(false));
+                throw new InterruptedIOException("The build was interrupted.");
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                // The fork-join pool wraps the checked exceptions of the tasks into runtime exceptions.
+                while (cause instanceof RuntimeException && cause.getCause() != null) cause = cause.getCause();
+                IOException failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+                if (exception == null) exception = failure;
+                else exception.addSuppressed(failure);
+            }
+        }
+        if (exception != null) throw exception;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * A single task of a build.
+     */
+    @FunctionalInterface
+    public interface BuildTask {
+        /**
+         * Run the task.
+         *
+         * @throws IOException Throw when a file error occurred.
+         */
+        void run() throws IOException;
+    }
+}
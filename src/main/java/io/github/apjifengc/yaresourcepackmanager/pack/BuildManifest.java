@@ -0,0 +1,241 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.binary.Hex;
+
+import io.github.apjifengc.yaresourcepackmanager.YaResourcepackManager;
+
+/**
+ * The manifest of a build. <br/>
+ * It maps every component to its content hash and the files it generated, so the next build can reuse the files
+ * of the components which are not changed.
+ *
+ * @author APJifengc
+ */
+public class BuildManifest {
+    private final Map<String, Entry> components = new HashMap<>();
+    private final Set<String> files = new HashSet<>();
+    private String settings;
+    private String fingerprint;
+    private String buildId;
+    private long buildTime;
+    private String file;
+    private String sha1;
+    private long size;
+
+    /**
+     * Load a manifest from the file.
+     *
+     * @param file The manifest file.
+     * @return The manifest, or an empty manifest if the file doesn't exist or is broken.
+     */
+    public static BuildManifest load(File file) {
+        if (file == null || !file.isFile()) return new BuildManifest();
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            BuildManifest manifest = YaResourcepackManager.gson.fromJson(reader, BuildManifest.class);
+            return manifest == null ? new BuildManifest() : manifest;
+        } catch (IOException | JsonParseException e) {
+            return new BuildManifest();
+        }
+    }
+
+    /**
+     * Save the manifest into the file.
+     *
+     * @param file The manifest file.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory()) parent.mkdirs();
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            YaResourcepackManager.gson.toJson(this, writer);
+        }
+    }
+
+    /**
+     * Get the entry of a component.
+     *
+     * @param identifier The component's identifier.
+     * @return The entry, or null if the component is not in the manifest.
+     */
+    public synchronized Entry get(String identifier) {
+        return identifier == null ? null : components.get(identifier);
+    }
+
+    /**
+     * Put the entry of a component.
+     *
+     * @param identifier The component's identifier.
+     * @param entry      The entry.
+     */
+    public synchronized void put(String identifier, Entry entry) {
+        components.put(identifier, entry);
+    }
+
+    /**
+     * Get all files in the resourcepack.
+     *
+     * @return The paths of the files.
+     */
+    public synchronized Set<String> getFiles() {
+        return new HashSet<>(files);
+    }
+
+    /**
+     * Set all files in the resourcepack.
+     *
+     * @param files The paths of the files.
+     */
+    public synchronized void setFiles(List<String> files) {
+        this.files.clear();
+        this.files.addAll(files);
+    }
+
+    /**
+     * Get the build settings the files were generated with.
+     *
+     * @return The settings, or null if they are unknown.
+     */
+    public String getSettings() {
+        return settings;
+    }
+
+    /**
+     * Set the build settings the files were generated with. <br/>
+     * Files can only be reused by a build with the same settings.
+     *
+     * @param settings The settings.
+     */
+    public void setSettings(String settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Get the fingerprint of the components and the settings the pack was built from.
+     *
+     * @return The fingerprint, or null if it is unknown.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Set the fingerprint of the components and the settings the pack was built from. <br/>
+     * If the next build has the same fingerprint, the zip file can be published again without building.
+     *
+     * @param fingerprint The fingerprint, or null if it is unknown.
+     */
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * Get the ID of the build.
+     *
+     * @return The ID, or null if it is unknown.
+     */
+    public String getBuildId() {
+        return buildId;
+    }
+
+    /**
+     * Get the time of the build.
+     *
+     * @return The time in milliseconds, or {@code 0} if it is unknown.
+     */
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    /**
+     * Set the ID and the time of the build.
+     *
+     * @param buildId   The ID of the build.
+     * @param buildTime The time of the build, in milliseconds.
+     */
+    public void setBuild(String buildId, long buildTime) {
+        this.buildId = buildId;
+        this.buildTime = buildTime;
+    }
+
+    /**
+     * Get the zip file built with this manifest.
+     *
+     * @return The zip file, or null if the zip file is not built yet.
+     */
+    public File getFile() {
+        return file == null ? null : new File(file);
+    }
+
+    /**
+     * Get the SHA-1 of the zip file built with this manifest.
+     *
+     * @return The SHA-1 in hex, or null if the zip file is not built yet.
+     */
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * Get the size of the zip file built with this manifest.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Set the zip file built with this manifest.
+     *
+     * @param file The zip file.
+     * @param sha1 The SHA-1 of the zip file.
+     * @param size The size of the zip file.
+     */
+    public void setPack(File file, byte[] sha1, long size) {
+        this.file = file.getAbsolutePath();
+        this.sha1 = Hex.encodeHexString(sha1);
+        this.size = size;
+    }
+
+    /**
+     * The files generated by one component.
+     */
+    public static class Entry {
+        private final String hash;
+        private final List<String> outputs;
+
+        /**
+         * Create a new entry.
+         *
+         * @param hash    The content hash of the component.
+         * @param outputs The paths of the files the component generated.
+         */
+        public Entry(String hash, List<String> outputs) {
+            this.hash = hash;
+            this.outputs = new ArrayList<>(outputs);
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public List<String> getOutputs() {
+            return outputs;
+        }
+    }
+}
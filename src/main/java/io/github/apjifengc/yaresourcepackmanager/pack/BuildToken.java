@@ -0,0 +1,40 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.InterruptedIOException;
+
+/**
+ * The cancellation token of a build. <br/>
+ * A superseded build is cancelled through its token instead of interrupting its threads, since an interrupt
+ * during the file I/O closes the channels of the build. The build checks the token between the components and
+ * stops there.
+ *
+ * @author APJifengc
+ */
+public class BuildToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Cancel the build. The component being generated now is still completed.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Check if the build is cancelled.
+     *
+     * @return If the build is cancelled.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stop the build if it is cancelled.
+     *
+     * @throws InterruptedIOException Throw when the build is cancelled.
+     */
+    public void check() throws InterruptedIOException {
+        if (cancelled) throw new InterruptedIOException("The build was cancelled.");
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+
+import io.github.apjifengc.yaresourcepackmanager.YaResourcepackManager;
+import io.github.apjifengc.yaresourcepackmanager.util.JsonUtil;
+
+/**
+ * A pack sink which writes every Json file with its keys sorted, so the same content always makes the same bytes
+ * no matter which order the keys were added in.
+ *
+ * @author APJifengc
+ */
+public class CanonicalPackSink implements PackSink {
+    private final PackSink sink;
+
+    /**
+     * Create a new canonical sink.
+     *
+     * @param sink The sink to write the files into.
+     */
+    public CanonicalPackSink(PackSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(String path, byte[] data) throws IOException {
+        if (path.endsWith(".json") || path.endsWith(".mcmeta")) {
+            try {
+                JsonElement element = YaResourcepackManager.parser.parse(new String(data, StandardCharsets.UTF_8));
+                data = JsonUtil.sortKeys(element).toString().getBytes(StandardCharsets.UTF_8);
+            } catch (JsonParseException e) {
+                // Not a valid Json file, keep it as it is.
+            }
+        }
+        sink.write(path, data);
+    }
+
+    @Override
+    public boolean reuse(String path) throws IOException {
+        return sink.reuse(path);
+    }
+
+    @Override
+    public boolean canReuse(String path) throws IOException {
+        return sink.canReuse(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        sink.close();
+    }
+}
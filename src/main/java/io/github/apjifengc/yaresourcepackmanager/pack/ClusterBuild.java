@@ -0,0 +1,403 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import com.google.gson.JsonParseException;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import io.github.apjifengc.yaresourcepackmanager.YaResourcepackManager;
+
+/**
+ * The cluster build of the resourcepack over a shared folder, e.g. a NFS mount used by all servers of a network.
+ * <br/>
+ * Every registry fingerprint has its own artifact folder, so servers with different components never share a
+ * pack. In a folder, the server which creates the lock file first builds the pack, and the others wait for it and
+ * copy the same zip with the same SHA-1. <br/>
+ * The builder writes a new heartbeat into the lock file regularly. A lock whose heartbeat doesn't change for the
+ * stale timeout, measured by the waiting server's own clock, belongs to a crashed builder, so it is broken and the
+ * election starts again. A builder checks that the lock is still its own before every heartbeat, and if its lock
+ * was broken, it gives up its build and waits for the new builder. <br/>
+ * The zip is named by its SHA-1 and the artifact file names it, so a zip and an artifact of different builders are
+ * never paired. Both are moved into place atomically, and the artifact file is written last, so a builder crashing
+ * mid-build never leaves a half-written pack.
+ *
+ * @author APJifengc
+ */
+public class ClusterBuild {
+    private static final String LOCK_FILE = "build.lock";
+    private static final String ARTIFACT_FILE = "artifact.json";
+    private static final String PACK_PREFIX = "pack-";
+    private static final long POLL_INTERVAL = 1000;
+
+    private final Logger logger;
+    private final File folder;
+    private final String node;
+    private final long heartbeat;
+    private final long staleTimeout;
+
+    /**
+     * Create a new cluster build.
+     *
+     * @param logger       The logger.
+     * @param folder       The shared folder.
+     * @param node         The name of this server, it is only used in the logs.
+     * @param heartbeat    The interval of the builder's heartbeats, in milliseconds.
+     * @param staleTimeout A lock whose heartbeat doesn't change for this long is stale, in milliseconds.
+     */
+    public ClusterBuild(Logger logger, File folder, String node, long heartbeat, long staleTimeout) {
+        this.logger = logger;
+        this.folder = folder;
+        this.node = node;
+        this.heartbeat = Math.max(100, heartbeat);
+        this.staleTimeout = Math.max(this.heartbeat * 3, staleTimeout);
+    }
+
+    /**
+     * Get the pack of a fingerprint, it is built by this server if no other server is building it. <br/>
+     * The returned pack is always a file of the store, it is not published yet.
+     *
+     * @param fingerprint The registry fingerprint.
+     * @param store       The local pack store.
+     * @param builder     The function to build the pack into a file of the store.
+     * @return The pack.
+     * @throws IOException Throw when the build failed, the shared folder cannot be used, or the thread is
+     *                     interrupted.
+     */
+    public PublishedPack obtain(String fingerprint, PackStore store, Builder builder) throws IOException {
+        File directory = new File(folder, fingerprint);
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("Cannot create the shared folder " + directory + ".");
+        }
+        Path lock = new File(directory, LOCK_FILE).toPath();
+        String seenHeartbeat = null;
+        long seenAt = System.currentTimeMillis();
+        boolean waiting = false;
+        while (true) {
+            Artifact artifact = readArtifact(directory);
+            if (artifact != null && fingerprint.equals(artifact.fingerprint)) {
+                return fetch(directory, artifact, store);
+            }
+            String token = node + "/" + UUID.randomUUID();
+            if (tryLock(lock, token)) {
+                try {
+                    // Another server may have finished between reading the artifact and taking the lock.
+                    artifact = readArtifact(directory);
+                    if (artifact != null && fingerprint.equals(artifact.fingerprint)) {
+                        return fetch(directory, artifact, store);
+                    }
+                    logger.info("This server is building the pack for the cluster.");
+                    return buildAndShare(directory, fingerprint, lock, token, builder);
+                } catch (LockLostException e) {
+                    logger.warning("The build lock of this server was broken, waiting for the new builder.");
+                    seenHeartbeat = null;
+                    seenAt = System.currentTimeMillis();
+                    continue;
+                } finally {
+                    unlock(lock, token);
+                }
+            }
+            String current = readLock(lock);
+            long now = System.currentTimeMillis();
+            if (current == null || !current.equals(seenHeartbeat)) {
+                seenHeartbeat = current;
+                seenAt = now;
+            } else if (now - seenAt > staleTimeout) {
+                logger.warning("The build lock of " + current.split("/")[0] + " is stale, breaking it.");
+                breakLock(lock, current);
+                seenHeartbeat = null;
+                continue;
+            }
+            if (!waiting && current != null) {
+                logger.info("Waiting for " + current.split("/")[0] + " to build the pack for the cluster...");
+                waiting = true;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the cluster build.");
+            }
+        }
+    }
+
+    private PublishedPack buildAndShare(File directory, String fingerprint, Path lock, String token,
+                                        Builder builder) throws IOException {
+        ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "YaResourcepackManager-Heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicLong beats = new AtomicLong();
+        AtomicBoolean lost = new AtomicBoolean();
+        heartbeats.scheduleWithFixedDelay(() -> {
+            try {
+                if (!beat(lock, token, token + "#" + beats.incrementAndGet())) {
+                    lost.set(true);
+                    heartbeats.shutdown();
+                }
+            } catch (IOException e) {
+                logger.warning("Failed to write the heartbeat of the build lock: " + e.getMessage());
+            }
+        }, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+        PublishedPack pack = null;
+        try {
+            pack = builder.build();
+            if (lost.get()) throw new LockLostException();
+            String name = PACK_PREFIX + pack.getSha1Hex() + ".zip";
+            File temp = new File(directory, name + "." + UUID.randomUUID() + ".tmp");
+            try {
+                Files.copy(pack.getFile().toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp.toPath(), new File(directory, name).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                temp.delete();
+            }
+            // The last check before the artifact is written, the new builder would write its own one.
+            if (lost.get() || !isOwner(lock, token)) throw new LockLostException();
+            Artifact artifact = new Artifact();
+            artifact.file = name;
+            artifact.fingerprint = fingerprint;
+            artifact.sha1 = pack.getSha1Hex();
+            artifact.size = pack.getSize();
+            artifact.buildId = pack.getBuildId();
+            artifact.buildTime = pack.getBuildTime();
+            artifact.node = node;
+            writeArtifact(directory, artifact);
+            return pack;
+        } catch (LockLostException e) {
+            if (pack != null) pack.getFile().delete();
+            throw e;
+        } finally {
+            heartbeats.shutdownNow();
+        }
+    }
+
+    /**
+     * Copy the shared pack into the store, the SHA-1 is checked while copying.
+     */
+    private PublishedPack fetch(File directory, Artifact artifact, PackStore store) throws IOException {
+        byte[] sha1;
+        try {
+            sha1 = Hex.decodeHex(artifact.sha1);
+        } catch (DecoderException e) {
+            throw new IOException("The shared artifact has an invalid SHA-1.", e);
+        }
+        File target = store.newPackFile(artifact.buildId);
+        target.getParentFile().mkdirs();
+        if (!target.isFile() || target.length() != artifact.size) {
+            File temp = new File(target.getPath() + ".tmp");
+            MessageDigest digest = DigestUtils.getSha1Digest();
+            try (InputStream input = new DigestInputStream(
+                    Files.newInputStream(new File(directory, artifact.file).toPath()), digest)) {
+                Files.copy(input, temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                temp.delete();
+                throw e;
+            }
+            if (!Arrays.equals(digest.digest(), sha1) || temp.length() != artifact.size) {
+                temp.delete();
+                throw new IOException("The shared pack doesn't match its artifact file.");
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        logger.info("Using the pack built by " + artifact.node + " for the cluster.");
+        return new PublishedPack(target, artifact.size, sha1, artifact.buildId, artifact.buildTime);
+    }
+
+    /**
+     * Delete the oldest artifact folders of other fingerprints. Folders with a build lock are never deleted.
+     *
+     * @param keep The number of artifact folders to keep.
+     */
+    public void cleanup(int keep) {
+        File[] directories = folder.listFiles(File::isDirectory);
+        if (directories == null || directories.length <= keep) return;
+        List<File> complete = new ArrayList<>();
+        for (File directory : directories) {
+            if (!new File(directory, LOCK_FILE).exists() && new File(directory, ARTIFACT_FILE).isFile()) {
+                complete.add(directory);
+            }
+        }
+        complete.sort(Comparator.comparingLong((File directory) -> new File(directory, ARTIFACT_FILE)
+                .lastModified()).reversed());
+        for (int i = Math.max(0, keep); i < complete.size(); i++) {
+            File directory = complete.get(i);
+            // The artifact file is deleted first, so nobody fetches a pack which is being deleted.
+            new File(directory, ARTIFACT_FILE).delete();
+            File[] packs = directory.listFiles((dir, name) -> name.startsWith(PACK_PREFIX));
+            if (packs != null) for (File pack : packs) pack.delete();
+            directory.delete();
+        }
+    }
+
+    private static boolean tryLock(Path lock, String token) throws IOException {
+        try {
+            Files.write(Files.createFile(lock), token.getBytes(StandardCharsets.UTF_8));
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private static String readLock(Path lock) throws IOException {
+        try {
+            return new String(Files.readAllBytes(lock), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Write a heartbeat into the lock if it is still owned by the token. <br/>
+     * The lock is checked and written through the same open file, so if the lock is broken and moved away
+     * meanwhile, the heartbeat goes into the moved file, and never into the lock of the new owner.
+     *
+     * @return If the lock is still owned by the token.
+     */
+    private static boolean beat(Path lock, String token, String content) throws IOException {
+        try (FileChannel channel = FileChannel.open(lock, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(4096, channel.size()));
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) ;
+            if (!new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).startsWith(token)) {
+                return false;
+            }
+            byte[] data = content.getBytes(StandardCharsets.UTF_8);
+            channel.truncate(0);
+            channel.write(ByteBuffer.wrap(data), 0);
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    private static boolean isOwner(Path lock, String token) throws IOException {
+        String content = readLock(lock);
+        return content != null && content.startsWith(token);
+    }
+
+    private static void unlock(Path lock, String token) {
+        try {
+            String content = readLock(lock);
+            if (content != null && content.startsWith(token)) Files.deleteIfExists(lock);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Break a stale lock. The lock is moved away first, so a new lock created by another server in the meantime
+     * is put back instead of being deleted. It is put back with a hard link, which never replaces a lock created
+     * after it was moved away, unlike a rename.
+     */
+    private static void breakLock(Path lock, String stale) throws IOException {
+        Path moved = lock.resolveSibling(lock.getFileName() + "." + UUID.randomUUID() + ".stale");
+        try {
+            Files.move(lock, moved, StandardCopyOption.ATOMIC_MOVE);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        String content = readLock(moved);
+        if (content != null && !content.equals(stale)) {
+            try {
+                Files.createLink(lock, moved);
+            } catch (FileAlreadyExistsException ignored) {
+                // Another server took the lock meanwhile, the lock which was put back is lost.
+            } catch (UnsupportedOperationException e) {
+                try {
+                    // Without hard links, a move which isn't atomic still fails if the lock exists.
+                    Files.move(moved, lock);
+                    return;
+                } catch (FileAlreadyExistsException ignored) {
+                }
+            }
+        }
+        Files.deleteIfExists(moved);
+    }
+
+    private static Artifact readArtifact(File directory) {
+        File file = new File(directory, ARTIFACT_FILE);
+        if (!file.isFile()) return null;
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            Artifact artifact = YaResourcepackManager.gson.fromJson(reader, Artifact.class);
+            if (artifact == null || artifact.file == null || artifact.sha1 == null || artifact.buildId == null
+                    || !artifact.file.equals(PACK_PREFIX + artifact.sha1 + ".zip")) {
+                return null;
+            }
+            return new File(directory, artifact.file).length() == artifact.size ? artifact : null;
+        } catch (IOException | JsonParseException e) {
+            return null;
+        }
+    }
+
+    private static void writeArtifact(File directory, Artifact artifact) throws IOException {
+        File temp = new File(directory, ARTIFACT_FILE + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+                YaResourcepackManager.gson.toJson(artifact, writer);
+            }
+            Files.move(temp.toPath(), new File(directory, ARTIFACT_FILE).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * The function to build the pack into a file of the local store.
+     */
+    @FunctionalInterface
+    public interface Builder {
+        PublishedPack build() throws IOException;
+    }
+
+    /**
+     * Thrown when the build lock of this server was broken by another server.
+     */
+    private static class LockLostException extends IOException {
+        private LockLostException() {
+            super("The build lock was broken by another server.");
+        }
+    }
+
+    /**
+     * The artifact file of a shared pack.
+     */
+    private static class Artifact {
+        private String file;
+        private String fingerprint;
+        private String sha1;
+        private long size;
+        private String buildId;
+        private long buildTime;
+        private String node;
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Set;
+
+/**
+ * A pack sink which writes the files into a folder. <br/>
+ * This is the old way of building the resourcepack, it is kept for debugging.
+ *
+ * @author APJifengc
+ */
+public class FolderPackSink implements PackSink {
+    private final File folder;
+
+    /**
+     * Create a new folder sink.
+     *
+     * @param folder The resourcepack folder.
+     */
+    public FolderPackSink(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public void write(String path, byte[] data) throws IOException {
+        File file = new File(folder, path);
+        File parent = file.getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Cannot create the folder " + parent);
+        }
+        try (OutputStream output = new FileOutputStream(file)) {
+            output.write(data);
+        }
+    }
+
+    @Override
+    public boolean reuse(String path) {
+        return new File(folder, path).isFile();
+    }
+
+    @Override
+    public boolean canReuse(String path) {
+        return reuse(path);
+    }
+
+    /**
+     * Delete all files in the folder which are not in the resourcepack anymore.
+     *
+     * @param files The paths of the files in the resourcepack.
+     */
+    public void prune(Set<String> files) {
+        prune(folder, "", files);
+    }
+
+    private void prune(File dir, String basePath, Set<String> files) {
+        File[] children = dir.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                prune(child, basePath + child.getName() + "/", files);
+                String[] left = child.list();
+                if (left != null && left.length == 0) child.delete();
+            } else if (!files.contains(basePath + child.getName())) {
+                child.delete();
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pack sink which resolves the files written by many components in a fixed order, no matter which component
+ * is generated first. <br/>
+ * Every component writes into its own view with its registration index. If many components write the same path,
+ * the one with the highest index wins, the same as the components registered later overwriting the files in the
+ * resourcepack folder. <br/>
+ * The paths the components declare before the build are resolved at once: the files of the last component
+ * declaring a path are written straight into the sink, and the files of the others are dropped. A declared file
+ * can't be replaced by a component which doesn't declare it. <br/>
+ * The other files are kept until {@link #flush()}, and then written into the sink in the order of the indexes.
+ * They are kept on the heap up to {@link #MEMORY_LIMIT} bytes, and the rest is spilled into a temp file.
+ *
+ * @author APJifengc
+ */
+public class OrderedPackSink implements PackSink {
+    /**
+     * The max bytes of the kept files on the heap.
+     */
+    public static final long MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    private final PackSink sink;
+    private final Map<String, Integer> claims;
+    private final Map<String, Pending> pending = new HashMap<>();
+    private long sequence;
+    private long memory;
+    private File spillFile;
+    private FileChannel spill;
+
+    /**
+     * Create a new ordered sink.
+     *
+     * @param sink The sink to write the files into.
+     */
+    public OrderedPackSink(PackSink sink) {
+        this(sink, Collections.emptyMap());
+    }
+
+    /**
+     * Create a new ordered sink with the paths declared before the build.
+     *
+     * @param sink   The sink to write the files into.
+     * @param claims The declared paths, with the highest index of the components declaring them.
+     */
+    public OrderedPackSink(PackSink sink, Map<String, Integer> claims) {
+        this.sink = sink;
+        this.claims = new HashMap<>(claims);
+    }
+
+    /**
+     * Get the view of a component.
+     *
+     * @param index The registration index of the component.
+     * @return The sink the component writes into.
+     */
+    public PackSink view(int index) {
+        return new PackSink() {
+            @Override
+            public void write(String path, byte[] data) throws IOException {
+                Integer claim = claims.get(path);
+                if (claim == null) {
+                    put(path, index, data);
+                } else if (claim == index) {
+                    sink.write(path, data);
+                }
+            }
+
+            @Override
+            public boolean reuse(String path) throws IOException {
+                Integer claim = claims.get(path);
+                if (claim != null) return claim != index || sink.reuse(path);
+                if (!sink.canReuse(path)) return false;
+                put(path, index, null);
+                return true;
+            }
+
+            @Override
+            public boolean canReuse(String path) throws IOException {
+                return sink.canReuse(path);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private synchronized void put(String path, int index, byte[] data) throws IOException {
+        Pending current = pending.get(path);
+        // A component writing the same path again also replaces its own file.
+        if (current != null && current.index > index) return;
+        if (current != null && current.data != null) memory -= current.data.length;
+        Pending file = new Pending(index, sequence++, path);
+        if (data == null) {
+            file.reuse = true;
+        } else if (memory + data.length <= MEMORY_LIMIT) {
+            file.data = data;
+            memory += data.length;
+        } else {
+            // The replaced files stay in the spill file, it is deleted after the flush.
+            if (spill == null) {
+                spillFile = File.createTempFile("yrm-build", ".tmp");
+                spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            file.offset = spill.size();
+            file.length = data.length;
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining()) spill.write(buffer, file.offset + buffer.position());
+        }
+        pending.put(path, file);
+    }
+
+    /**
+     * Write all kept files into the sink, in the order of the indexes and then the order they were written.
+     *
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void flush() throws IOException {
+        List<Pending> files;
+        synchronized (this) {
+            files = new ArrayList<>(pending.values());
+            pending.clear();
+            memory = 0;
+        }
+        files.sort((a, b) -> a.index != b.index ? Integer.compare(a.index, b.index)
+                : Long.compare(a.sequence, b.sequence));
+        try {
+            for (Pending file : files) {
+                if (file.reuse) {
+                    if (!sink.reuse(file.path)) {
+                        throw new IOException("The file " + file.path + " of the previous build cannot be reused.");
+                    }
+                } else {
+                    sink.write(file.path, file.data != null ? file.data : read(file));
+                }
+            }
+        } finally {
+            deleteSpill();
+        }
+    }
+
+    private byte[] read(Pending file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(file.length);
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, file.offset + buffer.position()) < 0) {
+                throw new IOException("The spill file of the build is shorter than expected.");
+            }
+        }
+        return buffer.array();
+    }
+
+    private synchronized void deleteSpill() throws IOException {
+        if (spill == null) return;
+        try {
+            spill.close();
+        } finally {
+            spill = null;
+            Files.deleteIfExists(spillFile.toPath());
+        }
+    }
+
+    @Override
+    public void write(String path, byte[] data) throws IOException {
+        sink.write(path, data);
+    }
+
+    @Override
+    public boolean reuse(String path) throws IOException {
+        return sink.reuse(path);
+    }
+
+    @Override
+    public boolean canReuse(String path) throws IOException {
+        return sink.canReuse(path);
+    }
+
+    /**
+     * Drop the files which are not flushed and delete the spill file. The sink written into is not closed.
+     *
+     * @throws IOException Throw when a file error occurred.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            pending.clear();
+            memory = 0;
+        }
+        deleteSpill();
+    }
+
+    private static class Pending {
+        private final int index;
+        private final long sequence;
+        private final String path;
+        private byte[] data;
+        private boolean reuse;
+        private long offset;
+        private int length;
+
+        private Pending(int index, long sequence, String path) {
+            this.index = index;
+            this.sequence = sequence;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+
+/**
+ * A sink that receives the files of a resourcepack. <br/>
+ * Components write their files into a sink instead of a folder, so the pack can be written straight into the
+ * zip file without a temp folder. <br/>
+ * The path is always relative to the resourcepack root and uses {@code /} as the separator,
+ * eg. "{@code assets/minecraft/textures/custom/hi.png}". <br/>
+ * Components may be generated in parallel, so the implementations must be thread-safe.
+ *
+ * @author APJifengc
+ * @see FolderPackSink
+ * @see ZipPackSink
+ */
+public interface PackSink extends Closeable {
+    /**
+     * Write a file into the resourcepack.
+     *
+     * @param path The path in the resourcepack.
+     * @param data The file's content.
+     * @throws IOException Throw when a file error occurred.
+     */
+    void write(String path, byte[] data) throws IOException;
+
+    /**
+     * Write a file into the resourcepack.
+     *
+     * @param path        The path in the resourcepack.
+     * @param inputStream The file's input stream.
+     * @throws IOException Throw when a file error occurred.
+     */
+    default void write(String path, InputStream inputStream) throws IOException {
+        write(path, FileUtils.readBytes(inputStream));
+    }
+
+    /**
+     * Keep a file generated by the previous build, instead of generating it again.
+     *
+     * @param path The path in the resourcepack.
+     * @return If the file of the previous build is kept. If not, the file must be generated again.
+     * @throws IOException Throw when a file error occurred.
+     */
+    default boolean reuse(String path) throws IOException {
+        return false;
+    }
+
+    /**
+     * Check if a file generated by the previous build can be kept, without keeping it.
+     *
+     * @param path The path in the resourcepack.
+     * @return If {@link #reuse(String)} would keep the file.
+     * @throws IOException Throw when a file error occurred.
+     */
+    default boolean canReuse(String path) throws IOException {
+        return false;
+    }
+}
@@ -0,0 +1,324 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import io.github.apjifengc.yaresourcepackmanager.util.FileUtils;
+
+/**
+ * The store of the published resourcepack versions. <br/>
+ * Every build is written into a new versioned file, and then it is switched to be the current pack atomically,
+ * while the old version can still be downloaded. <br/>
+ * The replaced versions are kept by the retention policy, so they can still be downloaded by their SHA-1, and they
+ * are deleted once they are expired and no download is using them. <br/>
+ * The current version can be written into an index file, so another process, e.g. a standalone pack server, can
+ * serve the same folder, see {@link #writeIndex()}.
+ *
+ * @author APJifengc
+ */
+public class PackStore {
+    private static final String INDEX_FILE = "published.properties";
+
+    private final File folder;
+    private final Map<PublishedPack, Integer> references = new HashMap<>();
+    private final Set<PublishedPack> retired = new HashSet<>();
+    /**
+     * The replaced versions which are kept, the newest first.
+     */
+    private final LinkedList<PublishedPack> history = new LinkedList<>();
+    private final Map<PublishedPack, Long> replacedTime = new HashMap<>();
+    private volatile PublishedPack current;
+    private int retention;
+    private long maxAge;
+    private boolean keepFiles;
+
+    /**
+     * Create a new pack store, the replaced versions are not kept.
+     *
+     * @param folder The folder to keep the pack versions in.
+     */
+    public PackStore(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Set the retention policy of the replaced versions.
+     *
+     * @param retention The max number of replaced versions to keep.
+     * @param maxAge    How long a replaced version is kept after it is replaced, in milliseconds,
+     *                  or {@code 0} for no limit.
+     */
+    public synchronized void setRetention(int retention, long maxAge) {
+        this.retention = Math.max(0, retention);
+        this.maxAge = Math.max(0, maxAge);
+        expire();
+    }
+
+    /**
+     * Set if the files should never be deleted, because they are owned by another process.
+     *
+     * @param keepFiles If the files should never be deleted.
+     */
+    public synchronized void setKeepFiles(boolean keepFiles) {
+        this.keepFiles = keepFiles;
+    }
+
+    /**
+     * Write the current pack into the index file of the folder. The file is replaced atomically.
+     *
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void writeIndex() throws IOException {
+        PublishedPack pack = current;
+        if (pack == null) return;
+        Properties index = new Properties();
+        index.setProperty("sha1", pack.getSha1Hex());
+        index.setProperty("size", String.valueOf(pack.getSize()));
+        index.setProperty("build-id", pack.getBuildId());
+        index.setProperty("build-time", String.valueOf(pack.getBuildTime()));
+        File temp = new File(folder, INDEX_FILE + ".tmp");
+        try (OutputStream output = Files.newOutputStream(temp.toPath())) {
+            index.store(output, "The current pack of YaResourcepackManager");
+        }
+        Files.move(temp.toPath(), getIndexFile().toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the pack in the index file of the folder.
+     *
+     * @return The pack, or null if there is no index file or its pack file is missing.
+     * @throws IOException Throw when the index file is broken or a file error occurred.
+     */
+    public PublishedPack readIndex() throws IOException {
+        File file = getIndexFile();
+        if (!file.isFile()) return null;
+        Properties index = new Properties();
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            index.load(input);
+        }
+        String buildId = index.getProperty("build-id");
+        String sha1 = index.getProperty("sha1");
+        if (buildId == null || sha1 == null) throw new IOException("The index file is broken.");
+        try {
+            long size = Long.parseLong(index.getProperty("size", ""));
+            File pack = newPackFile(buildId);
+            if (!pack.isFile() || pack.length() != size) return null;
+            return new PublishedPack(pack, size, Hex.decodeHex(sha1), buildId,
+                    Long.parseLong(index.getProperty("build-time", "0")));
+        } catch (NumberFormatException | DecoderException e) {
+            throw new IOException("The index file is broken.", e);
+        }
+    }
+
+    /**
+     * Get the index file of the folder.
+     *
+     * @return The index file.
+     */
+    public File getIndexFile() {
+        return new File(folder, INDEX_FILE);
+    }
+
+    /**
+     * Get the file for a new pack version.
+     *
+     * @param buildId The ID of the build.
+     * @return The file.
+     */
+    public File newPackFile(String buildId) {
+        return new File(folder, "pack-" + buildId + ".zip");
+    }
+
+    /**
+     * Get the current pack.
+     *
+     * @return The current pack, or null if no pack is published yet.
+     */
+    public PublishedPack getCurrent() {
+        return current;
+    }
+
+    /**
+     * Get all versions which can be downloaded.
+     *
+     * @return The versions, the current one first.
+     */
+    public synchronized List<PublishedPack> getVersions() {
+        expire();
+        List<PublishedPack> versions = new ArrayList<>();
+        if (current != null) versions.add(current);
+        versions.addAll(history);
+        return versions;
+    }
+
+    /**
+     * Switch the current pack to a new version. <br/>
+     * The previous version is kept by the retention policy.
+     *
+     * @param pack The new pack.
+     */
+    public synchronized void publish(PublishedPack pack) {
+        PublishedPack previous = current;
+        current = pack;
+        for (Iterator<PublishedPack> iterator = history.iterator(); iterator.hasNext(); ) {
+            PublishedPack version = iterator.next();
+            if (Arrays.equals(version.getSha1(), pack.getSha1())) {
+                iterator.remove();
+                replacedTime.remove(version);
+                if (version != pack) retire(version);
+            }
+        }
+        if (previous != null && previous != pack) {
+            history.addFirst(previous);
+            replacedTime.put(previous, System.currentTimeMillis());
+        }
+        expire();
+    }
+
+    /**
+     * Get the current pack for a download. <br/>
+     * The pack won't be deleted until it is {@link #release(PublishedPack) released}.
+     *
+     * @return The current pack, or null if no pack is published yet.
+     */
+    public synchronized PublishedPack acquire() {
+        PublishedPack pack = current;
+        if (pack != null) references.merge(pack, 1, Integer::sum);
+        return pack;
+    }
+
+    /**
+     * Get a version by its SHA-1 for a download. <br/>
+     * The pack won't be deleted until it is {@link #release(PublishedPack) released}.
+     *
+     * @param sha1 The SHA-1 of the version in hex.
+     * @return The version, or null if there isn't such a version or it is expired.
+     */
+    public synchronized PublishedPack acquire(String sha1) {
+        expire();
+        PublishedPack pack = null;
+        if (current != null && current.getSha1Hex().equalsIgnoreCase(sha1)) {
+            pack = current;
+        } else {
+            for (PublishedPack version : history) {
+                if (version.getSha1Hex().equalsIgnoreCase(sha1)) {
+                    pack = version;
+                    break;
+                }
+            }
+        }
+        if (pack != null) references.merge(pack, 1, Integer::sum);
+        return pack;
+    }
+
+    /**
+     * Release a pack after the download is finished.
+     *
+     * @param pack The pack.
+     */
+    public synchronized void release(PublishedPack pack) {
+        Integer count = references.get(pack);
+        if (count == null) return;
+        if (count > 1) {
+            references.put(pack, count - 1);
+            return;
+        }
+        references.remove(pack);
+        if (retired.remove(pack)) delete(pack);
+    }
+
+    /**
+     * Remove the replaced versions which are out of the retention policy.
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        int index = 0;
+        for (Iterator<PublishedPack> iterator = history.iterator(); iterator.hasNext(); index++) {
+            PublishedPack version = iterator.next();
+            if (index >= retention || (maxAge > 0 && now - replacedTime.get(version) > maxAge)) {
+                iterator.remove();
+                replacedTime.remove(version);
+                retire(version);
+            }
+        }
+    }
+
+    private void retire(PublishedPack pack) {
+        if (references.containsKey(pack)) {
+            retired.add(pack);
+        } else {
+            delete(pack);
+        }
+    }
+
+    private void delete(PublishedPack pack) {
+        // No download is using the pack anymore, so its mapping can be released even if the file is kept.
+        pack.release();
+        if (!keepFiles && !getUsedFiles().contains(pack.getFile())) pack.getFile().delete();
+    }
+
+    private Set<File> getUsedFiles() {
+        Set<File> used = new HashSet<>();
+        if (current != null) used.add(current.getFile());
+        history.forEach(pack -> used.add(pack.getFile()));
+        references.keySet().forEach(pack -> used.add(pack.getFile()));
+        return used;
+    }
+
+    /**
+     * Add the pack files left in the folder by an earlier run as replaced versions, the newest first, so they can
+     * still be downloaded and are deleted by the retention policy. <br/>
+     * The time they were replaced isn't known, so they count as replaced now.
+     *
+     * @throws IOException Throw when a pack file cannot be read.
+     */
+    public synchronized void restoreHistory() throws IOException {
+        File[] files = folder.listFiles((dir, name) -> name.startsWith("pack-") && name.endsWith(".zip"));
+        if (files == null) return;
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        Set<File> used = getUsedFiles();
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            if (used.contains(file)) continue;
+            String name = file.getName();
+            PublishedPack pack = new PublishedPack(file, file.length(), FileUtils.getFileSHA1(file),
+                    name.substring("pack-".length(), name.length() - ".zip".length()), file.lastModified());
+            history.addLast(pack);
+            replacedTime.put(pack, now);
+        }
+        expire();
+    }
+
+    /**
+     * Delete all pack files in the folder which are not kept and not being downloaded.
+     */
+    public synchronized void cleanup() {
+        if (keepFiles) return;
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        Set<File> used = getUsedFiles();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith("pack-") && name.endsWith(".zip") && !used.contains(file)) file.delete();
+        }
+    }
+}
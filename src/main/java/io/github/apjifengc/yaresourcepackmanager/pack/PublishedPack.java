@@ -0,0 +1,168 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * A resourcepack which is built and published. <br/>
+ * This is immutable, the SHA-1 is computed once while the pack is built, so it never needs to read the file again.
+ * <br/>
+ * The zip file is mapped into memory once, and all downloads of the pack share the mapped buffer. The mapping is
+ * released by the {@link PackStore} when the version is deleted, see {@link #release()}.
+ *
+ * @author APJifengc
+ */
+public final class PublishedPack {
+    private final File file;
+    private final long size;
+    private final byte[] sha1;
+    private final String buildId;
+    private final long buildTime;
+    private volatile ByteBuffer buffer;
+    private MappedByteBuffer mapped;
+    private boolean released;
+
+    /**
+     * Create a new published pack.
+     *
+     * @param file      The pack's zip file.
+     * @param size      The size of the zip file.
+     * @param sha1      The SHA-1 of the zip file.
+     * @param buildId   The ID of the build.
+     * @param buildTime The time the pack was built, in milliseconds.
+     */
+    public PublishedPack(File file, long size, byte[] sha1, String buildId, long buildTime) {
+        this.file = file;
+        this.size = size;
+        this.sha1 = sha1.clone();
+        this.buildId = buildId;
+        this.buildTime = buildTime;
+    }
+
+    /**
+     * Create a published pack from the manifest of its build.
+     *
+     * @param manifest  The manifest of the build.
+     * @param buildId   The ID of the build.
+     * @param buildTime The time the pack was built, in milliseconds.
+     * @return The published pack.
+     * @throws IOException Throw when the manifest doesn't have a valid pack.
+     */
+    public static PublishedPack of(BuildManifest manifest, String buildId, long buildTime) throws IOException {
+        if (manifest.getFile() == null || manifest.getSha1() == null) {
+            throw new IOException("The manifest doesn't have the pack file.");
+        }
+        try {
+            return new PublishedPack(manifest.getFile(), manifest.getSize(), Hex.decodeHex(manifest.getSha1()),
+                    buildId, buildTime);
+        } catch (DecoderException e) {
+            throw new IOException("The manifest has an invalid SHA-1.", e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Get the SHA-1 of the zip file.
+     *
+     * @return A copy of the SHA-1.
+     */
+    public byte[] getSha1() {
+        return sha1.clone();
+    }
+
+    /**
+     * Get the SHA-1 of the zip file in hex.
+     *
+     * @return The SHA-1 in hex.
+     */
+    public String getSha1Hex() {
+        return Hex.encodeHexString(sha1);
+    }
+
+    /**
+     * Get the content of the zip file. <br/>
+     * The file is mapped into memory the first time, and the mapped buffer is shared by all callers.
+     *
+     * @return A read-only view of the mapped buffer, with its own position and limit.
+     * @throws IOException Throw when the file can't be mapped, it is larger than 2GB, or the pack is released.
+     */
+    public ByteBuffer getBuffer() throws IOException {
+        ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            synchronized (this) {
+                buffer = this.buffer;
+                if (buffer == null) {
+                    if (released) throw new IOException("The pack is released.");
+                    if (size > Integer.MAX_VALUE) throw new IOException("The pack is too large to be mapped.");
+                    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    }
+                    buffer = mapped.asReadOnlyBuffer();
+                    this.buffer = buffer;
+                }
+            }
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * Release the mapped buffer, so the file can be deleted and its disk space is freed at once. <br/>
+     * It must only be called when no download is using the pack anymore, a buffer from {@link #getBuffer()} can't
+     * be read after this.
+     */
+    public synchronized void release() {
+        released = true;
+        buffer = null;
+        if (mapped == null) return;
+        unmap(mapped);
+        mapped = null;
+    }
+
+    /**
+     * Unmap a buffer without waiting for the GC. If the JVM doesn't allow it, the buffer is left to the GC.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Method invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(field.get(null), buffer);
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+    }
+
+    public String getBuildId() {
+        return buildId;
+    }
+
+    public long getBuildTime() {
+        return buildTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PublishedPack{" +
+                "file=" + file +
+                ", size=" + size +
+                ", sha1=" + getSha1Hex() +
+                ", buildId='" + buildId + '\'' +
+                '}';
+    }
+}
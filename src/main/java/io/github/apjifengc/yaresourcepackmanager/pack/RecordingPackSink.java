@@ -0,0 +1,59 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pack sink which records the paths of all files written into another sink.
+ *
+ * @author APJifengc
+ */
+public class RecordingPackSink implements PackSink {
+    private final PackSink sink;
+    private final List<String> paths = new ArrayList<>();
+
+    /**
+     * Create a new recording sink.
+     *
+     * @param sink The sink to write the files into.
+     */
+    public RecordingPackSink(PackSink sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void write(String path, byte[] data) throws IOException {
+        sink.write(path, data);
+        record(path);
+    }
+
+    @Override
+    public boolean reuse(String path) throws IOException {
+        if (!sink.reuse(path)) return false;
+        record(path);
+        return true;
+    }
+
+    @Override
+    public boolean canReuse(String path) throws IOException {
+        return sink.canReuse(path);
+    }
+
+    private synchronized void record(String path) {
+        paths.add(path);
+    }
+
+    /**
+     * Get the paths of all files written or reused.
+     *
+     * @return The paths.
+     */
+    public synchronized List<String> getPaths() {
+        return new ArrayList<>(paths);
+    }
+
+    @Override
+    public void close() {
+    }
+}
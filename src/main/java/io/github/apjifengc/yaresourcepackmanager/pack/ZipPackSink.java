@@ -0,0 +1,164 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.github.apjifengc.yaresourcepackmanager.zip.CompressionPolicy;
+import io.github.apjifengc.yaresourcepackmanager.zip.ParallelDeflater;
+import io.github.apjifengc.yaresourcepackmanager.zip.ZipIndex;
+import io.github.apjifengc.yaresourcepackmanager.zip.ZipWriter;
+
+/**
+ * A pack sink which writes the files straight into the zip file. <br/>
+ * The files reused from the previous pack are copied in their compressed form, without inflating and deflating
+ * them again.
+ *
+ * @author APJifengc
+ */
+public class ZipPackSink implements PackSink {
+    private final ZipWriter writer;
+    private final ZipIndex previous;
+    private final ParallelDeflater deflater;
+    private final CompressionPolicy policy;
+    private final Set<String> entries = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Create a new zip sink.
+     *
+     * @param output The output zip file.
+     * @throws IOException Throw when the file cannot be created.
+     */
+    public ZipPackSink(File output) throws IOException {
+        this(output, null);
+    }
+
+    /**
+     * Create a new zip sink which can reuse the files of the previous pack.
+     *
+     * @param output   The output zip file.
+     * @param previous The zip file of the previous build, or null if there isn't one.
+     *                 It must not be the same file as the output.
+     * @throws IOException Throw when the file cannot be created.
+     */
+    public ZipPackSink(File output, File previous) throws IOException {
+        this(output, previous, null);
+    }
+
+    /**
+     * Create a new zip sink which can reuse the files of the previous pack and compress the files on many threads.
+     *
+     * @param output   The output zip file.
+     * @param previous The zip file of the previous build, or null if there isn't one.
+     *                 It must not be the same file as the output.
+     * @param deflater The parallel deflater to compress the files with, or null to compress the files on the
+     *                 thread writing them.
+     * @throws IOException Throw when the file cannot be created.
+     */
+    public ZipPackSink(File output, File previous, ParallelDeflater deflater) throws IOException {
+        this(output, previous, deflater, CompressionPolicy.deflateAll());
+    }
+
+    /**
+     * Create a new zip sink which can reuse the files of the previous pack and compress the files on many threads.
+     *
+     * @param output   The output zip file.
+     * @param previous The zip file of the previous build, or null if there isn't one.
+     *                 It must not be the same file as the output.
+     * @param deflater The parallel deflater to compress the files with, or null to compress the files on the
+     *                 thread writing them.
+     * @param policy   The policy deciding how every file is compressed.
+     * @throws IOException Throw when the file cannot be created.
+     */
+    public ZipPackSink(File output, File previous, ParallelDeflater deflater, CompressionPolicy policy)
+            throws IOException {
+        this(output, previous, deflater, policy, false);
+    }
+
+    /**
+     * Create a new zip sink which can reuse the files of the previous pack and compress the files on many threads.
+     *
+     * @param output       The output zip file.
+     * @param previous     The zip file of the previous build, or null if there isn't one.
+     *                     It must not be the same file as the output.
+     * @param deflater     The parallel deflater to compress the files with, or null to compress the files on the
+     *                     thread writing them.
+     * @param policy       The policy deciding how every file is compressed.
+     * @param reproducible If the zip file should be byte-reproducible, see {@link ZipWriter}.
+     * @throws IOException Throw when the file cannot be created.
+     */
+    public ZipPackSink(File output, File previous, ParallelDeflater deflater, CompressionPolicy policy,
+                       boolean reproducible) throws IOException {
+        this.previous = openIndex(previous);
+        this.deflater = deflater;
+        this.policy = policy;
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory()) parent.mkdirs();
+        this.writer = new ZipWriter(new FileOutputStream(output), reproducible);
+    }
+
+    private static ZipIndex openIndex(File file) {
+        if (file == null || !file.isFile()) return null;
+        try {
+            return new ZipIndex(file);
+        } catch (IOException e) {
+            // A broken previous pack just means nothing can be reused.
+            return null;
+        }
+    }
+
+    @Override
+    public void write(String path, byte[] data) throws IOException {
+        // A zip can't hold the same entry twice, keep the first one.
+        if (!entries.add(path)) return;
+        if (deflater != null) {
+            writer.submit(deflater.submit(path, data, policy));
+        } else {
+            writer.write(policy.compress(path, data));
+        }
+    }
+
+    @Override
+    public boolean reuse(String path) throws IOException {
+        if (previous == null) return false;
+        ZipIndex.Entry entry = previous.getEntry(path);
+        if (entry == null) return false;
+        if (!entries.add(path)) return true;
+        writer.copy(previous, entry);
+        return true;
+    }
+
+    @Override
+    public boolean canReuse(String path) {
+        return previous != null && previous.getEntry(path) != null;
+    }
+
+    /**
+     * Get the SHA-1 of the zip file.
+     *
+     * @return The SHA-1, or null if the sink is not closed yet.
+     */
+    public byte[] getSha1() {
+        return writer.getSha1();
+    }
+
+    /**
+     * Get the size of the zip file.
+     *
+     * @return The size in bytes.
+     */
+    public long getSize() {
+        return writer.getSize();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.close();
+        } finally {
+            if (previous != null) previous.close();
+        }
+    }
+}
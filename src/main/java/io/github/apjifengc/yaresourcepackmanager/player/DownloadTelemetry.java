@@ -0,0 +1,218 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.HmacAlgorithms;
+import org.apache.commons.codec.digest.HmacUtils;
+
+import io.github.apjifengc.yaresourcepackmanager.http.TransferMetrics;
+import io.github.apjifengc.yaresourcepackmanager.util.Histogram;
+
+/**
+ * The telemetry of the players' downloads. <br/>
+ * Every player gets an unguessable token, it is put into the player's pack URL, so the downloads recorded by the
+ * {@link TransferMetrics} can be joined with the player. The downloads are then joined with the timings of the
+ * resourcepack status events: how long the client took to accept the prompt, to download the pack, and to load it.
+ * <br/>
+ * The token is a HMAC of the player's UUID with a secret kept in a file, so a player always gets the same URL for
+ * the same pack, and the client finds the pack in its cache after a rejoin or a restart, see
+ * {@link #loadSecret(File)}.
+ *
+ * @author APJifengc
+ */
+public class DownloadTelemetry implements Consumer<TransferMetrics.Record> {
+    private static final int SAMPLES = 1024;
+
+    private static final int SECRET_LENGTH = 32;
+
+    private byte[] secret = newSecret();
+    private final Map<UUID, String> tokens = new HashMap<>();
+    private final Map<String, UUID> players = new HashMap<>();
+    private final Map<UUID, Session> sessions = new HashMap<>();
+    private final Histogram acceptLatencies = new Histogram(SAMPLES);
+    private final Histogram downloadLatencies = new Histogram(SAMPLES);
+    private final Histogram loadLatencies = new Histogram(SAMPLES);
+
+    private static byte[] newSecret() {
+        byte[] secret = new byte[SECRET_LENGTH];
+        new SecureRandom().nextBytes(secret);
+        return secret;
+    }
+
+    /**
+     * Load the secret of the tokens from a file, a new secret is written into the file if it doesn't exist. <br/>
+     * If it can't be loaded, the tokens still work, but they change after a restart.
+     *
+     * @param file The secret file.
+     * @throws IOException Throw when the file cannot be read or written.
+     */
+    public synchronized void loadSecret(File file) throws IOException {
+        byte[] secret;
+        if (file.isFile()) {
+            secret = Files.readAllBytes(file.toPath());
+            if (secret.length < SECRET_LENGTH) throw new IOException("The secret file is broken.");
+        } else {
+            secret = newSecret();
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), secret);
+        }
+        this.secret = secret;
+        tokens.clear();
+        players.clear();
+    }
+
+    /**
+     * Get the token of a player, it is always the same for the same player and secret.
+     *
+     * @param uuid The player's UUID.
+     * @return The token.
+     */
+    public synchronized String getToken(UUID uuid) {
+        String token = tokens.get(uuid);
+        if (token == null) {
+            byte[] hmac = new HmacUtils(HmacAlgorithms.HMAC_SHA_256, secret).hmac(uuid.toString());
+            token = Hex.encodeHexString(hmac).substring(0, 32);
+            tokens.put(uuid, token);
+            players.put(token, uuid);
+        }
+        return token;
+    }
+
+    /**
+     * Get the player of a token.
+     *
+     * @param token The token.
+     * @return The player's UUID, or null if the token is unknown.
+     */
+    public synchronized UUID getPlayer(String token) {
+        return token == null ? null : players.get(token);
+    }
+
+    /**
+     * Forget a player, usually because the player quit. The token is joined with the player again when the
+     * player gets it the next time.
+     *
+     * @param uuid The player's UUID.
+     */
+    public synchronized void remove(UUID uuid) {
+        String token = tokens.remove(uuid);
+        if (token != null) players.remove(token);
+        sessions.remove(uuid);
+    }
+
+    /**
+     * Record that a player is prompted with the pack.
+     *
+     * @param uuid The player's UUID.
+     */
+    public synchronized void prompt(UUID uuid) {
+        Session session = sessions.computeIfAbsent(uuid, key -> new Session());
+        session.promptTime = System.currentTimeMillis();
+        session.acceptTime = 0;
+    }
+
+    /**
+     * Record a new state of a player, it is joined with the last prompt.
+     *
+     * @param uuid  The player's UUID.
+     * @param state The new state.
+     */
+    public synchronized void update(UUID uuid, PackState state) {
+        Session session = sessions.get(uuid);
+        if (session == null || session.promptTime == 0) return;
+        long now = System.currentTimeMillis();
+        if (state == PackState.ACCEPTED) {
+            session.acceptTime = now;
+            acceptLatencies.add(now - session.promptTime);
+        } else if (state == PackState.LOADED) {
+            if (session.acceptTime != 0) downloadLatencies.add(now - session.acceptTime);
+            loadLatencies.add(now - session.promptTime);
+            session.promptTime = 0;
+        } else if (state == PackState.DECLINED || state == PackState.FAILED) {
+            session.promptTime = 0;
+        }
+    }
+
+    @Override
+    public synchronized void accept(TransferMetrics.Record record) {
+        UUID uuid = getPlayer(record.getClient());
+        if (uuid == null) return;
+        Session session = sessions.computeIfAbsent(uuid, key -> new Session());
+        if (record.isCompleted()) session.last = record;
+        else session.aborted++;
+    }
+
+    /**
+     * Get the histogram of the time from the prompt to the ACCEPTED status.
+     *
+     * @return The histogram in milliseconds.
+     */
+    public Histogram getAcceptLatencies() {
+        return acceptLatencies;
+    }
+
+    /**
+     * Get the histogram of the time from the ACCEPTED status to the SUCCESSFULLY_LOADED status, it is the time the
+     * client took to download and load the pack.
+     *
+     * @return The histogram in milliseconds.
+     */
+    public Histogram getDownloadLatencies() {
+        return downloadLatencies;
+    }
+
+    /**
+     * Get the histogram of the time from the prompt to the SUCCESSFULLY_LOADED status.
+     *
+     * @return The histogram in milliseconds.
+     */
+    public Histogram getLoadLatencies() {
+        return loadLatencies;
+    }
+
+    /**
+     * Get the online players with the slowest last completed downloads.
+     *
+     * @param count The max number of players.
+     * @return The players' UUIDs and throughputs in bytes per second, the slowest first.
+     */
+    public synchronized List<Map.Entry<UUID, Long>> getSlowest(int count) {
+        List<Map.Entry<UUID, Long>> list = new ArrayList<>();
+        sessions.forEach((uuid, session) -> {
+            if (session.last != null) {
+                list.add(Map.entry(uuid, session.last.getThroughput()));
+            }
+        });
+        list.sort(Map.Entry.comparingByValue(Comparator.naturalOrder()));
+        return list.subList(0, Math.min(count, list.size()));
+    }
+
+    /**
+     * Get the number of aborted downloads of a player in this session.
+     *
+     * @param uuid The player's UUID.
+     * @return The number of aborted downloads.
+     */
+    public synchronized int getAborted(UUID uuid) {
+        Session session = sessions.get(uuid);
+        return session == null ? 0 : session.aborted;
+    }
+
+    private static class Session {
+        private long promptTime;
+        private long acceptTime;
+        private int aborted;
+        private TransferMetrics.Record last;
+    }
+}
@@ -0,0 +1,17 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+/**
+ * The state of a player's resourcepack. <br/>
+ * A player is {@link #PROMPTED} when the pack is sent, and then the client answers with {@link #ACCEPTED} or
+ * {@link #DECLINED}, and at last {@link #LOADED} or {@link #FAILED}.
+ *
+ * @author APJifengc
+ */
+public enum PackState {
+    NONE,
+    PROMPTED,
+    ACCEPTED,
+    DECLINED,
+    LOADED,
+    FAILED
+}
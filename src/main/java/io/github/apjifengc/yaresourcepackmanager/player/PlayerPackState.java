@@ -0,0 +1,102 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+import java.util.UUID;
+
+import org.apache.commons.codec.binary.Hex;
+
+/**
+ * The resourcepack state of a player.
+ *
+ * @author APJifengc
+ */
+public class PlayerPackState {
+    private final UUID uuid;
+    private PackState state = PackState.NONE;
+    private byte[] promptedSha1;
+    private byte[] loadedSha1;
+    private int failures;
+    private long updateTime;
+
+    PlayerPackState(UUID uuid) {
+        this.uuid = uuid;
+    }
+
+    PlayerPackState(UUID uuid, PackState state, byte[] promptedSha1, byte[] loadedSha1, int failures,
+                    long updateTime) {
+        this.uuid = uuid;
+        this.state = state;
+        this.promptedSha1 = promptedSha1;
+        this.loadedSha1 = loadedSha1;
+        this.failures = failures;
+        this.updateTime = updateTime;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public PackState getState() {
+        return state;
+    }
+
+    /**
+     * Get the SHA-1 of the last pack sent to the player.
+     *
+     * @return The SHA-1 in hex, or null if no pack is sent yet.
+     */
+    public String getPromptedSha1() {
+        return promptedSha1 == null ? null : Hex.encodeHexString(promptedSha1);
+    }
+
+    /**
+     * Get the SHA-1 of the last pack loaded by the player.
+     *
+     * @return The SHA-1 in hex, or null if no pack is loaded yet.
+     */
+    public String getLoadedSha1() {
+        return loadedSha1 == null ? null : Hex.encodeHexString(loadedSha1);
+    }
+
+    /**
+     * Get the number of failed downloads since the last loaded pack.
+     *
+     * @return The number of failures.
+     */
+    public int getFailures() {
+        return failures;
+    }
+
+    /**
+     * Get the time the state was changed last time.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    byte[] getPromptedSha1Bytes() {
+        return promptedSha1;
+    }
+
+    byte[] getLoadedSha1Bytes() {
+        return loadedSha1;
+    }
+
+    void prompt(byte[] sha1, long time) {
+        state = PackState.PROMPTED;
+        promptedSha1 = sha1.clone();
+        updateTime = time;
+    }
+
+    void update(PackState state, long time) {
+        this.state = state;
+        this.updateTime = time;
+        if (state == PackState.LOADED) {
+            loadedSha1 = promptedSha1;
+            failures = 0;
+        } else if (state == PackState.FAILED) {
+            failures = Math.min(failures + 1, 0xFFFF);
+        }
+    }
+}
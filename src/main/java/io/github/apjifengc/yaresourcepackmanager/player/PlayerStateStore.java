@@ -0,0 +1,273 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * The store of the players' resourcepack states. <br/>
+ * The states are kept in a compact binary file, one fixed-size record for each player:
+ * the UUID, the state, the SHA-1 of the last prompted and the last loaded pack, the number of failures
+ * and the time of the last change. <br/>
+ * Failed downloads are retried with an exponential backoff, see {@link #getDueRetries(long)}. The pending retries
+ * are kept in a queue ordered by their due time, so finding the due ones doesn't scan all states. <br/>
+ * The states which are not changed for the expiry are dropped when the states are saved, see {@link #prune(long)}.
+ *
+ * @author APJifengc
+ */
+public class PlayerStateStore {
+    private static final int MAGIC = 0x59524D53;
+    private static final int VERSION = 1;
+    private static final byte[] NO_SHA1 = new byte[20];
+
+    private final Map<UUID, PlayerPackState> states = new HashMap<>();
+    private final PriorityQueue<Retry> retries = new PriorityQueue<>(Comparator.comparingLong(retry -> retry.due));
+    private long retryDelay = 30000;
+    private long maxRetryDelay = 600000;
+    private int maxRetries = 5;
+    private long expiry;
+    private boolean dirty;
+
+    /**
+     * Load the states from a file.
+     *
+     * @param file The file.
+     * @return The store, it is empty if the file doesn't exist.
+     * @throws IOException Throw when the file is broken or a file error occurred.
+     */
+    public static PlayerStateStore load(File file) throws IOException {
+        PlayerStateStore store = new PlayerStateStore();
+        if (!file.exists()) return store;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) throw new IOException("The player state file is broken.");
+            int version = in.readUnsignedByte();
+            if (version != VERSION) throw new IOException("Unknown player state file version: " + version);
+            int count = in.readInt();
+            PackState[] values = PackState.values();
+            for (int i = 0; i < count; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                int state = in.readUnsignedByte();
+                byte[] prompted = readSha1(in);
+                byte[] loaded = readSha1(in);
+                int failures = in.readUnsignedShort();
+                long updateTime = in.readLong();
+                store.states.put(uuid, new PlayerPackState(uuid, state < values.length ? values[state] : PackState.NONE,
+                        prompted, loaded, failures, updateTime));
+            }
+        } catch (EOFException e) {
+            throw new IOException("The player state file is truncated.", e);
+        }
+        store.queueRetries();
+        return store;
+    }
+
+    private static byte[] readSha1(DataInputStream in) throws IOException {
+        byte[] sha1 = new byte[20];
+        in.readFully(sha1);
+        return Arrays.equals(sha1, NO_SHA1) ? null : sha1;
+    }
+
+    /**
+     * Save the states into a file. The file is replaced atomically.
+     *
+     * @param file The file.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void save(File file) throws IOException {
+        List<PlayerPackState> snapshot;
+        synchronized (this) {
+            prune(System.currentTimeMillis());
+            snapshot = new ArrayList<>(states.size());
+            for (PlayerPackState state : states.values()) {
+                snapshot.add(new PlayerPackState(state.getUuid(), state.getState(), state.getPromptedSha1Bytes(),
+                        state.getLoadedSha1Bytes(), state.getFailures(), state.getUpdateTime()));
+            }
+            dirty = false;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeInt(snapshot.size());
+            for (PlayerPackState state : snapshot) {
+                out.writeLong(state.getUuid().getMostSignificantBits());
+                out.writeLong(state.getUuid().getLeastSignificantBits());
+                out.writeByte(state.getState().ordinal());
+                out.write(state.getPromptedSha1Bytes() == null ? NO_SHA1 : state.getPromptedSha1Bytes());
+                out.write(state.getLoadedSha1Bytes() == null ? NO_SHA1 : state.getLoadedSha1Bytes());
+                out.writeShort(state.getFailures());
+                out.writeLong(state.getUpdateTime());
+            }
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Set the backoff of the retries.
+     *
+     * @param retryDelay    The delay before the first retry, in milliseconds. It doubles after every failure.
+     * @param maxRetryDelay The max delay before a retry, in milliseconds.
+     * @param maxRetries    The max number of retries, or {@code 0} to never retry.
+     */
+    public synchronized void setRetry(long retryDelay, long maxRetryDelay, int maxRetries) {
+        this.retryDelay = Math.max(0, retryDelay);
+        this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay);
+        this.maxRetries = Math.max(0, maxRetries);
+        queueRetries();
+    }
+
+    /**
+     * Set the expiry of the states.
+     *
+     * @param expiry The states which are not changed for this long are dropped, in milliseconds, or {@code 0} to
+     *               keep them forever.
+     */
+    public synchronized void setExpiry(long expiry) {
+        this.expiry = Math.max(0, expiry);
+    }
+
+    /**
+     * Drop the states which are not changed for the expiry. It is called when the states are saved.
+     *
+     * @param now The time now, in milliseconds.
+     * @return The number of dropped states.
+     */
+    public synchronized int prune(long now) {
+        if (expiry <= 0) return 0;
+        int size = states.size();
+        // A state waiting for a retry is kept until the retries are given up.
+        states.values().removeIf(state -> now - state.getUpdateTime() > expiry && getRetryDelay(state) < 0);
+        int pruned = size - states.size();
+        if (pruned > 0) dirty = true;
+        return pruned;
+    }
+
+    /**
+     * Check if the states are changed since they were saved last time.
+     *
+     * @return If the states are changed.
+     */
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Get the state of a player.
+     *
+     * @param uuid The player's UUID.
+     * @return The state, or null if the player is never prompted.
+     */
+    public synchronized PlayerPackState get(UUID uuid) {
+        return states.get(uuid);
+    }
+
+    /**
+     * Check if a player has loaded a pack.
+     *
+     * @param uuid The player's UUID.
+     * @param sha1 The SHA-1 of the pack.
+     * @return If the last pack loaded by the player is the pack.
+     */
+    public synchronized boolean hasLoaded(UUID uuid, byte[] sha1) {
+        PlayerPackState state = states.get(uuid);
+        return state != null && state.getLoadedSha1Bytes() != null && Arrays.equals(state.getLoadedSha1Bytes(), sha1);
+    }
+
+    /**
+     * Mark a player as prompted with a pack.
+     *
+     * @param uuid The player's UUID.
+     * @param sha1 The SHA-1 of the pack.
+     */
+    public synchronized void prompt(UUID uuid, byte[] sha1) {
+        states.computeIfAbsent(uuid, PlayerPackState::new).prompt(sha1, System.currentTimeMillis());
+        dirty = true;
+    }
+
+    /**
+     * Change the state of a player, by the status sent by the client.
+     *
+     * @param uuid  The player's UUID.
+     * @param state The new state.
+     * @return The player's state.
+     */
+    public synchronized PlayerPackState update(UUID uuid, PackState state) {
+        PlayerPackState playerState = states.computeIfAbsent(uuid, PlayerPackState::new);
+        playerState.update(state, System.currentTimeMillis());
+        queueRetry(playerState);
+        dirty = true;
+        return playerState;
+    }
+
+    /**
+     * Get the delay before a player's failed download is retried.
+     *
+     * @param state The player's state.
+     * @return The delay in milliseconds, or {@code -1} if it won't be retried.
+     */
+    public synchronized long getRetryDelay(PlayerPackState state) {
+        if (state.getState() != PackState.FAILED || state.getFailures() > maxRetries) return -1;
+        int shift = Math.min(state.getFailures() - 1, 30);
+        return Math.min(maxRetryDelay, retryDelay << shift);
+    }
+
+    /**
+     * Get the players whose failed downloads should be retried now. Every retry is returned only once.
+     *
+     * @param now The time now, in milliseconds.
+     * @return The players' UUIDs.
+     */
+    public synchronized List<UUID> getDueRetries(long now) {
+        List<UUID> due = new ArrayList<>();
+        while (!retries.isEmpty() && retries.peek().due <= now) {
+            Retry retry = retries.poll();
+            PlayerPackState state = states.get(retry.uuid);
+            // The retry is outdated if the state is changed after the failure.
+            if (state != null && state.getUpdateTime() == retry.updateTime && getRetryDelay(state) >= 0) {
+                due.add(retry.uuid);
+            }
+        }
+        return due;
+    }
+
+    private void queueRetry(PlayerPackState state) {
+        long delay = getRetryDelay(state);
+        if (delay >= 0) retries.add(new Retry(state.getUuid(), state.getUpdateTime(), state.getUpdateTime() + delay));
+    }
+
+    private void queueRetries() {
+        retries.clear();
+        for (PlayerPackState state : states.values()) queueRetry(state);
+    }
+
+    /**
+     * A pending retry of a failed download.
+     */
+    private static class Retry {
+        private final UUID uuid;
+        private final long updateTime;
+        private final long due;
+
+        private Retry(UUID uuid, long updateTime, long due) {
+            this.uuid = uuid;
+            this.updateTime = updateTime;
+            this.due = due;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package io.github.apjifengc.yaresourcepackmanager.publish;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * The publisher which uploads the packs with HTTP PUT, e.g. to an object storage or a CDN origin. <br/>
+ * A pack is uploaded to {@code <url>/<sha1>.zip}. If a HEAD request finds the pack with the same size there, the
+ * upload is skipped. <br/>
+ * The pack is streamed from the file in parts with the {@code Content-Range} header, the same protocol as the
+ * resumable uploads of Google Cloud Storage: the server answers {@code 308} with the {@code Range} it has received
+ * so far until the last part, and {@code 200} or {@code 201} when the upload is complete. A failed part is resumed
+ * from the range the server reports, so a large pack never has to be uploaded again from the start. <br/>
+ * The server is only asked for the received range after a failed part, because a plain PUT server stores the empty
+ * query as the object. A server which completes the upload before the last part doesn't support the parts, so the
+ * pack is uploaded again in one request. The upload is confirmed by a HEAD request with the size in the end.
+ *
+ * @author APJifengc
+ */
+public class HttpPackPublisher implements PackPublisher {
+    private static final int RESUME_INCOMPLETE = 308;
+    private static final int BUFFER = 65536;
+
+    private final Logger logger;
+    private final String uploadUrl;
+    private final String publicUrl;
+    private final long partSize;
+    private final int retries;
+    private final Map<String, String> headers;
+    private int connectTimeout = 10000;
+    private int readTimeout = 60000;
+
+    /**
+     * Create a new HTTP pack publisher.
+     *
+     * @param logger    The logger.
+     * @param uploadUrl The URL to upload the packs to.
+     * @param publicUrl The URL the players download the packs from.
+     * @param partSize  The size of the parts in bytes.
+     * @param retries   The number of times a failed part is retried.
+     * @param headers   The headers added to every request, e.g. {@code Authorization}.
+     */
+    public HttpPackPublisher(Logger logger, String uploadUrl, String publicUrl, long partSize, int retries,
+                             Map<String, String> headers) {
+        this.logger = logger;
+        this.uploadUrl = trimSlash(uploadUrl);
+        this.publicUrl = trimSlash(publicUrl);
+        this.partSize = Math.max(65536, partSize);
+        this.retries = Math.max(0, retries);
+        this.headers = new LinkedHashMap<>(headers);
+    }
+
+    private static String trimSlash(String url) {
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    /**
+     * Set the timeouts of the requests.
+     *
+     * @param connectTimeout The connect timeout in milliseconds.
+     * @param readTimeout    The read timeout in milliseconds.
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public void publish(PublishedPack pack) throws IOException {
+        URL url = new URL(uploadUrl + "/" + pack.getSha1Hex() + ".zip");
+        long size = pack.getSize();
+        if (exists(url, size)) {
+            logger.info("The pack " + pack.getSha1Hex() + " is already uploaded.");
+            return;
+        }
+        long offset = 0;
+        long part = partSize;
+        int failures = 0;
+        long reached = 0;
+        try (FileChannel file = FileChannel.open(pack.getFile().toPath(), StandardOpenOption.READ)) {
+            while (offset < size) {
+                if (Thread.currentThread().isInterrupted()) throw new IOException("The upload is interrupted.");
+                long end = Math.min(size, offset + part) - 1;
+                long next;
+                try {
+                    next = uploadPart(url, file, offset, end, size);
+                    if (next == size && end < size - 1) {
+                        logger.warning("The server doesn't support uploads in parts, uploading the pack at once.");
+                        part = size;
+                        offset = 0;
+                        continue;
+                    }
+                    // E.g. a server which restarts the upload, or a proxy which drops the Range header.
+                    if (next <= offset) {
+                        throw new IOException("The server received nothing after " + offset + " bytes.");
+                    }
+                } catch (IOException e) {
+                    if (++failures > retries) throw e;
+                    logger.warning("Failed to upload a part of the pack, retrying: " + e.getMessage());
+                    offset = resumeOffset(url, size);
+                    if (offset > 0) logger.info("Resuming the upload from " + offset + " bytes.");
+                    continue;
+                }
+                // The retries are counted for every part, a part which is uploaded again after a restarted
+                // upload doesn't reset them.
+                if (next > reached) {
+                    failures = 0;
+                    reached = next;
+                }
+                offset = next;
+            }
+        }
+        if (!exists(url, size)) {
+            throw new IOException("The uploaded pack " + pack.getSha1Hex() + " isn't found with its size.");
+        }
+        logger.info("Uploaded the pack " + pack.getSha1Hex() + " (" + size + " bytes).");
+    }
+
+    /**
+     * Check if the pack is already at the URL.
+     */
+    private boolean exists(URL url, long size) throws IOException {
+        HttpURLConnection connection = open(url, "HEAD");
+        try {
+            return connection.getResponseCode() == 200 && connection.getContentLengthLong() == size;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Get the offset to resume a failed upload from. <br/>
+     * The server may complete the upload with the query itself, so a complete upload is confirmed by a HEAD.
+     *
+     * @return The offset, it is 0 if the server cannot tell.
+     */
+    private long resumeOffset(URL url, long size) {
+        try {
+            long offset = queryOffset(url, size);
+            return offset >= size && !exists(url, size) ? 0 : offset;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Ask the server how many bytes of the upload it has received.
+     *
+     * @return The offset to upload from, it is the size if the upload is complete.
+     */
+    private long queryOffset(URL url, long size) throws IOException {
+        HttpURLConnection connection = open(url, "PUT");
+        try {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(0L);
+            connection.setRequestProperty("Content-Range", "bytes */" + size);
+            connection.getOutputStream().close();
+            // Some servers answer 404 if no upload of the pack is started.
+            if (connection.getResponseCode() == 404) return 0;
+            return handleResponse(connection, size);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Upload a part of the pack.
+     *
+     * @return The offset to upload the next part from.
+     */
+    private long uploadPart(URL url, FileChannel file, long start, long end, long size) throws IOException {
+        HttpURLConnection connection = open(url, "PUT");
+        try {
+            long length = end - start + 1;
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(length);
+            connection.setRequestProperty("Content-Type", "application/zip");
+            connection.setRequestProperty("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            InputStream input = Channels.newInputStream(file.position(start));
+            try (OutputStream output = connection.getOutputStream()) {
+                byte[] buffer = new byte[BUFFER];
+                long remaining = length;
+                while (remaining > 0) {
+                    int count = input.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (count < 0) throw new IOException("The pack file is shorter than expected.");
+                    output.write(buffer, 0, count);
+                    remaining -= count;
+                }
+            }
+            return handleResponse(connection, size);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private long handleResponse(HttpURLConnection connection, long size) throws IOException {
+        int code = connection.getResponseCode();
+        if (code == 200 || code == 201) return size;
+        if (code == RESUME_INCOMPLETE) {
+            // "Range: bytes=0-<last>", there is no Range header if nothing is received yet.
+            String range = connection.getHeaderField("Range");
+            if (range == null) return 0;
+            int dash = range.lastIndexOf('-');
+            try {
+                return Long.parseLong(range.substring(dash + 1).trim()) + 1;
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Range header: " + range);
+            }
+        }
+        throw new IOException("The server answered " + code + " " + connection.getResponseMessage() + ".");
+    }
+
+    private HttpURLConnection open(URL url, String method) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setUseCaches(false);
+        // 308 is the answer to an incomplete upload, not a redirect.
+        connection.setInstanceFollowRedirects(false);
+        headers.forEach(connection::setRequestProperty);
+        return connection;
+    }
+
+    @Override
+    public String getURL(PublishedPack pack) {
+        return publicUrl + "/" + pack.getSha1Hex() + ".zip";
+    }
+}
@@ -0,0 +1,219 @@
+package io.github.apjifengc.yaresourcepackmanager.publish;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A small local object store, it stands in for an object storage or a CDN origin in tests and small setups. <br/>
+ * Objects are files in a folder, they are downloaded with GET and HEAD and uploaded with PUT. A PUT with the
+ * {@code Content-Range} header appends a part to an unfinished upload, and the store answers the same way as
+ * the resumable uploads of Google Cloud Storage, see {@link HttpPackPublisher}. <br/>
+ * Only packs named {@code <sha1>.zip} are stored, and only if their content has this SHA-1. The uploads are only
+ * accepted from the loopback address, the publisher of this server, so it can't be used as an open file host.
+ *
+ * @author APJifengc
+ */
+public class LocalObjectStore {
+    private static final Pattern NAME = Pattern.compile("/([0-9a-f]{40})\\.zip");
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (?:(\\d+)-(\\d+)|\\*)/(\\d+)");
+    private static final int BUFFER = 65536;
+
+    private final Logger logger;
+    private final int port;
+    private final File folder;
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * Create a new local object store.
+     *
+     * @param logger The logger.
+     * @param port   The port to listen on.
+     * @param folder The folder to keep the objects in.
+     */
+    public LocalObjectStore(Logger logger, int port, File folder) {
+        this.logger = logger;
+        this.port = port;
+        this.folder = folder;
+    }
+
+    /**
+     * Start the store.
+     *
+     * @throws IOException Throw when the port cannot be used.
+     */
+    public synchronized void start() throws IOException {
+        if (server != null) return;
+        folder.mkdirs();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "YaResourcepackManager-ObjectStore");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+        logger.info("The local object store is listening on port " + getPort() + ".");
+    }
+
+    /**
+     * Get the port the store is listening on, it is the chosen one if the port 0 is given.
+     *
+     * @return The port, or -1 if the store is not started.
+     */
+    public synchronized int getPort() {
+        return server == null ? -1 : server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the store.
+     */
+    public synchronized void stop() {
+        if (server == null) return;
+        server.stop(0);
+        executor.shutdownNow();
+        server = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            Matcher matcher = NAME.matcher(exchange.getRequestURI().getPath());
+            if (!matcher.matches()) {
+                respond(exchange, 404);
+                return;
+            }
+            String sha1 = matcher.group(1);
+            String name = sha1 + ".zip";
+            switch (exchange.getRequestMethod()) {
+                case "GET":
+                case "HEAD":
+                    get(exchange, name);
+                    break;
+                case "PUT":
+                    if (!exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+                        respond(exchange, 403);
+                        break;
+                    }
+                    synchronized (locks.computeIfAbsent(name, key -> new Object())) {
+                        put(exchange, name, sha1);
+                    }
+                    break;
+                default:
+                    exchange.getResponseHeaders().set("Allow", "GET, HEAD, PUT");
+                    respond(exchange, 405);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Failed to handle the request " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + ": " + e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void get(HttpExchange exchange, String name) throws IOException {
+        File file = new File(folder, name);
+        boolean head = exchange.getRequestMethod().equals("HEAD");
+        if (!file.isFile()) {
+            respond(exchange, 404);
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        if (head) {
+            exchange.getResponseHeaders().set("Content-Length", String.valueOf(file.length()));
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(200, file.length());
+        try (OutputStream output = exchange.getResponseBody()) {
+            Files.copy(file.toPath(), output);
+        }
+    }
+
+    private void put(HttpExchange exchange, String name, String sha1) throws IOException {
+        File file = new File(folder, name);
+        File part = new File(folder, name + ".part");
+        String range = exchange.getRequestHeaders().getFirst("Content-Range");
+        long start = 0;
+        long total = -1;
+        if (range != null) {
+            Matcher matcher = CONTENT_RANGE.matcher(range.trim());
+            if (!matcher.matches()) {
+                respond(exchange, 400);
+                return;
+            }
+            total = Long.parseLong(matcher.group(3));
+            if (matcher.group(1) == null) {
+                // A status query of the upload.
+                if (file.isFile() && file.length() == total) {
+                    respond(exchange, 200);
+                } else {
+                    sendIncomplete(exchange, part);
+                }
+                return;
+            }
+            start = Long.parseLong(matcher.group(1));
+            if (start != (part.isFile() ? part.length() : 0)) {
+                sendIncomplete(exchange, part);
+                return;
+            }
+        }
+        StandardOpenOption mode = start > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+        InputStream body = exchange.getRequestBody();
+        try (OutputStream output = Files.newOutputStream(part.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, mode)) {
+            byte[] buffer = new byte[BUFFER];
+            int count;
+            while ((count = body.read(buffer)) >= 0) output.write(buffer, 0, count);
+        }
+        if (total >= 0 && part.length() < total) {
+            sendIncomplete(exchange, part);
+            return;
+        }
+        String actual;
+        try (InputStream input = Files.newInputStream(part.toPath())) {
+            actual = DigestUtils.sha1Hex(input);
+        }
+        if (!actual.equals(sha1)) {
+            part.delete();
+            logger.warning("Rejected the upload of " + name + ", its SHA-1 is " + actual + ".");
+            respond(exchange, 400);
+            return;
+        }
+        Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        respond(exchange, 201);
+    }
+
+    private static void sendIncomplete(HttpExchange exchange, File part) throws IOException {
+        long received = part.isFile() ? part.length() : 0;
+        if (received > 0) exchange.getResponseHeaders().set("Range", "bytes=0-" + (received - 1));
+        respond(exchange, 308);
+    }
+
+    /**
+     * Send an answer without a body. <br/>
+     * The rest of the request body is read first, or the JDK server resets the connection when the client reuses it.
+     */
+    private static void respond(HttpExchange exchange, int code) throws IOException {
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        exchange.sendResponseHeaders(code, -1);
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.apjifengc.yaresourcepackmanager.publish;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.logging.Logger;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * The publisher which copies the packs into a folder, e.g. the document root of a web server. <br/>
+ * A pack is copied to {@code <sha1>.zip}, so a pack which is already in the folder is skipped.
+ *
+ * @author APJifengc
+ */
+public class LocalPackPublisher implements PackPublisher {
+    private final Logger logger;
+    private final File folder;
+    private final String url;
+
+    /**
+     * Create a new local pack publisher.
+     *
+     * @param logger The logger.
+     * @param folder The folder to copy the packs into.
+     * @param url    The URL of the folder.
+     */
+    public LocalPackPublisher(Logger logger, File folder, String url) {
+        this.logger = logger;
+        this.folder = folder;
+        this.url = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+
+    @Override
+    public void publish(PublishedPack pack) throws IOException {
+        File target = new File(folder, pack.getSha1Hex() + ".zip");
+        if (target.isFile() && target.length() == pack.getSize()) {
+            logger.info("The pack " + pack.getSha1Hex() + " is already in " + folder + ".");
+            return;
+        }
+        if (!folder.isDirectory() && !folder.mkdirs()) throw new IOException("Cannot create the folder " + folder);
+        File temp = new File(folder, pack.getSha1Hex() + ".zip.tmp");
+        try {
+            Files.copy(pack.getFile().toPath(), temp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+        logger.info("Copied the pack " + pack.getSha1Hex() + " into " + folder + ".");
+    }
+
+    @Override
+    public String getURL(PublishedPack pack) {
+        return url + "/" + pack.getSha1Hex() + ".zip";
+    }
+}
@@ -0,0 +1,38 @@
+package io.github.apjifengc.yaresourcepackmanager.publish;
+
+import java.io.IOException;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * A publisher of the built packs, e.g. to a static file server, an object storage or a CDN origin. <br/>
+ * A pack is published after it is built and before the players are prompted, so its URL always works when the
+ * players download it. It runs on the build thread, and it can block. <br/>
+ * The packs are content addressed by their SHA-1, so a pack which is already published doesn't need to be
+ * published again.
+ *
+ * @author APJifengc
+ */
+public interface PackPublisher {
+    /**
+     * Publish a pack.
+     *
+     * @param pack The pack.
+     * @throws IOException Throw when the pack cannot be published.
+     */
+    void publish(PublishedPack pack) throws IOException;
+
+    /**
+     * Get the URL the players download a published pack from.
+     *
+     * @param pack The pack.
+     * @return The URL.
+     */
+    String getURL(PublishedPack pack);
+
+    /**
+     * Close the publisher, it is called when the plugin is disabled or the publisher is replaced.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,122 @@
+package io.github.apjifengc.yaresourcepackmanager.standalone;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import io.github.apjifengc.yaresourcepackmanager.http.BandwidthLimiter;
+import io.github.apjifengc.yaresourcepackmanager.http.NioPackServer;
+import io.github.apjifengc.yaresourcepackmanager.http.PackHandler;
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * The standalone pack server. <br/>
+ * It runs in its own JVM without Bukkit, so the garbage and the socket I/O of the downloads never touch the game
+ * server. It serves the packs the plugin publishes into a folder with {@code publish.mode: external}, and it
+ * switches to a new version when the index file of the folder is changed. <br/>
+ * The plugin only adds files to the folder, and this server deletes the replaced versions by its retention policy
+ * once no download is using them, so a version is never deleted while it can still be downloaded from here.
+ *
+ * @author APJifengc
+ */
+public final class PackServerMain {
+    private static final Logger logger = Logger.getLogger("YaResourcepackManager");
+
+    private PackServerMain() {
+    }
+
+    /**
+     * Start the standalone pack server.
+     *
+     * @param args The path of the config file, {@code pack-server.properties} by default. A default config file is
+     *             created if it doesn't exist.
+     * @throws IOException Throw when the config cannot be read or the server cannot be started.
+     */
+    public static void main(String[] args) throws IOException {
+        File configFile = new File(args.length > 0 ? args[0] : "pack-server.properties");
+        if (!configFile.exists()) {
+            try (InputStream input = PackServerMain.class.getResourceAsStream("/pack-server.properties")) {
+                if (input == null) throw new IOException("The default config is missing.");
+                Files.copy(input, configFile.toPath());
+            }
+            logger.info("Created the default config " + configFile + ".");
+        }
+        Properties config = new Properties();
+        try (InputStream input = Files.newInputStream(configFile.toPath())) {
+            config.load(input);
+        }
+        File folder = new File(config.getProperty("folder", "packs"));
+        PackStore store = new PackStore(folder);
+        store.setRetention(getInt(config, "retention.versions", 3), getLong(config, "retention.max-age", 3600) * 1000);
+        BandwidthLimiter limiter = new BandwidthLimiter(getLong(config, "bandwidth.global", 0),
+                getLong(config, "bandwidth.per-connection", 0), getLong(config, "bandwidth.burst", 1048576));
+        NioPackServer server = new NioPackServer(logger, getInt(config, "port", 25566),
+                new PackHandler(store, limiter), getInt(config, "io-threads", 0), getInt(config, "backlog", 128),
+                getInt(config, "max-connections", 2048), getLong(config, "idle-timeout", 30000),
+                getInt(config, "max-keep-alive-requests", 100));
+        reload(store);
+        store.restoreHistory();
+        server.startService();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stopService, "YaResourcepackManager-Shutdown"));
+        watch(store, folder, getLong(config, "poll-interval", 5000));
+    }
+
+    /**
+     * Watch the index file, and check it regularly for the folders which don't report file changes.
+     */
+    private static void watch(PackStore store, File folder, long pollInterval) throws IOException {
+        folder.mkdirs();
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            folder.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watcher.poll(Math.max(100, pollInterval), TimeUnit.MILLISECONDS);
+                // Any change in the folder, or the poll interval, checks the index file again.
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                reload(store);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reload(PackStore store) {
+        try {
+            PublishedPack pack = store.readIndex();
+            PublishedPack current = store.getCurrent();
+            if (pack == null || (current != null && current.getSha1Hex().equals(pack.getSha1Hex()))) return;
+            store.publish(pack);
+            logger.info("Serving the pack " + pack.getSha1Hex() + " (" + pack.getSize() + " bytes).");
+        } catch (IOException e) {
+            logger.warning("Failed to read the index file: " + e.getMessage());
+        }
+    }
+
+    private static int getInt(Properties config, String key, int def) {
+        return (int) getLong(config, key, def);
+    }
+
+    private static long getLong(Properties config, String key, long def) {
+        String value = config.getProperty(key);
+        if (value == null) return def;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warning("Invalid number of " + key + ": " + value);
+            return def;
+        }
+    }
+}
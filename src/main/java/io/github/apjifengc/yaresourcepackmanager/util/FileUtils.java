@@ -1,5 +1,6 @@
 package io.github.apjifengc.yaresourcepackmanager.util;
 
+import io.github.apjifengc.yaresourcepackmanager.pack.PackSink;
 import org.apache.commons.codec.digest.DigestUtils;
 
 import java.io.*;
@@ -159,7 +160,9 @@ public class FileUtils {
      * @throws IOException Throws on error reading from the file.
      */
     public static byte[] getFileSHA1(File file) throws IOException {
-        return DigestUtils.sha1(new FileInputStream(file));
+        try (InputStream input = new FileInputStream(file)) {
+            return DigestUtils.sha1(input);
+        }
     }
 
     /**
@@ -180,4 +183,46 @@ public class FileUtils {
         }
         output.close();
     }
-}
\ No newline at end of file
+
+    /**
+     * Read all the bytes from an input stream.
+     *
+     * @param inputStream The input stream.
+     * @return The bytes.
+     * @throws IOException Throw when an error occurred.
+     */
+    public static byte[] readBytes(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        int count;
+        byte[] data = new byte[BUFFER];
+        while ((count = inputStream.read(data, 0, BUFFER)) != -1) {
+            output.write(data, 0, count);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Write a folder's content into a pack sink.
+     *
+     * @param folder The folder.
+     * @param sink   The pack sink.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public static void writeFolder(File folder, PackSink sink) throws IOException {
+        writeFolder(folder, sink, "");
+    }
+
+    private static void writeFolder(File folder, PackSink sink, String basePath) throws IOException {
+        File[] files = folder.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) {
+                writeFolder(file, sink, basePath + file.getName() + "/");
+            } else {
+                try (InputStream input = new FileInputStream(file)) {
+                    sink.write(basePath + file.getName(), input);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package io.github.apjifengc.yaresourcepackmanager.util;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of the latest samples. <br/>
+ * Only the latest samples are kept in a ring buffer, so the percentiles follow the recent behavior and the
+ * memory doesn't grow. It is thread safe.
+ *
+ * @author APJifengc
+ */
+public class Histogram {
+    private final long[] samples;
+    private int index;
+    private int count;
+    private long total;
+
+    /**
+     * Create a new histogram.
+     *
+     * @param samples The number of the latest samples to keep.
+     */
+    public Histogram(int samples) {
+        this.samples = new long[Math.max(1, samples)];
+    }
+
+    /**
+     * Add a sample.
+     *
+     * @param value The sample.
+     */
+    public synchronized void add(long value) {
+        samples[index] = value;
+        index = (index + 1) % samples.length;
+        if (count < samples.length) count++;
+        total++;
+    }
+
+    /**
+     * Get the number of samples added since the histogram was created, including the dropped ones.
+     *
+     * @return The number of samples.
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Get a percentile of the kept samples.
+     *
+     * @param percentile The percentile from {@code 0} to {@code 100}.
+     * @return The value, or {@code -1} if there is no sample.
+     */
+    public long getPercentile(double percentile) {
+        return getPercentiles(percentile)[0];
+    }
+
+    /**
+     * Get some percentiles of the kept samples, the samples are sorted only once.
+     *
+     * @param percentiles The percentiles from {@code 0} to {@code 100}.
+     * @return The values in the same order, they are {@code -1} if there is no sample.
+     */
+    public long[] getPercentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (this) {
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        long[] result = new long[percentiles.length];
+        for (int i = 0; i < percentiles.length; i++) {
+            if (sorted.length == 0) {
+                result[i] = -1;
+                continue;
+            }
+            int rank = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+            result[i] = sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        }
+        return result;
+    }
+}
@@ -2,8 +2,12 @@ package io.github.apjifengc.yaresourcepackmanager.util;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
 import org.bukkit.util.Vector;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 public class JsonUtil {
     /**
      * Create a Vector from a Json element.
@@ -33,4 +37,28 @@ public class JsonUtil {
         array.add(vector.getZ());
         return array;
     }
+
+    /**
+     * Create a copy of a Json element with the keys of every object sorted.
+     *
+     * @param element The Json element.
+     * @return The sorted Json element.
+     */
+    public static JsonElement sortKeys(JsonElement element) {
+        if (element.isJsonObject()) {
+            Map<String, JsonElement> sorted = new TreeMap<>();
+            for (Map.Entry<String, JsonElement> entry : element.getAsJsonObject().entrySet()) {
+                sorted.put(entry.getKey(), sortKeys(entry.getValue()));
+            }
+            JsonObject object = new JsonObject();
+            sorted.forEach(object::add);
+            return object;
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = new JsonArray();
+            for (JsonElement child : element.getAsJsonArray()) array.add(sortKeys(child));
+            return array;
+        }
+        return element;
+    }
 }
@@ -0,0 +1,92 @@
+package io.github.apjifengc.yaresourcepackmanager.util;
+
+import java.lang.reflect.Method;
+
+import org.bukkit.Bukkit;
+
+/**
+ * The monitor of the server ticks. <br/>
+ * It should run on the main thread every tick, and the TPS is computed from the intervals of the last ticks. <br/>
+ * The MSPT is how long the server works in a tick, it is read from the tick times of Paper. Spigot doesn't have
+ * them, and the intervals can't tell the work time (it is always 1000 / TPS), so there is no MSPT on Spigot.
+ *
+ * @author APJifengc
+ */
+public class TickMonitor implements Runnable {
+    private final long[] intervals;
+    private int index;
+    private int count;
+    private long total;
+    private long last;
+    private Method tickTime;
+    private Method tickTimes;
+    private boolean resolved;
+
+    /**
+     * Create a new tick monitor.
+     *
+     * @param samples The number of ticks to compute the average from.
+     */
+    public TickMonitor(int samples) {
+        this.intervals = new long[Math.max(1, samples)];
+    }
+
+    @Override
+    public void run() {
+        long now = System.nanoTime();
+        if (last != 0) {
+            long interval = now - last;
+            total += interval - intervals[index];
+            intervals[index] = interval;
+            index = (index + 1) % intervals.length;
+            if (count < intervals.length) count++;
+        }
+        last = now;
+    }
+
+    /**
+     * Get the ticks per second, it is not more than 20.
+     *
+     * @return The TPS.
+     */
+    public double getTps() {
+        if (count == 0) return 20;
+        return Math.min(20, 1_000_000_000.0 * count / total);
+    }
+
+    /**
+     * Get the average milliseconds the server works in a tick, from the tick times of Paper.
+     *
+     * @return The MSPT, or {@code -1} if the server doesn't have the tick times.
+     */
+    public double getMspt() {
+        if (!resolved) {
+            resolved = true;
+            tickTime = getMethod("getAverageTickTime");
+            // The older versions of Paper only have the times of the last ticks, in nanoseconds.
+            if (tickTime == null) tickTimes = getMethod("getTickTimes");
+        }
+        try {
+            if (tickTime != null) return ((Number) tickTime.invoke(Bukkit.getServer())).doubleValue();
+            if (tickTimes != null) {
+                long[] times = (long[]) tickTimes.invoke(Bukkit.getServer());
+                if (times.length == 0) return -1;
+                long sum = 0;
+                for (long time : times) sum += time;
+                return sum / 1_000_000.0 / times.length;
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            tickTime = null;
+            tickTimes = null;
+        }
+        return -1;
+    }
+
+    private static Method getMethod(String name) {
+        try {
+            return Bukkit.getServer().getClass().getMethod(name);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * The policy deciding how every zip entry is compressed. <br/>
+ * Already compressed formats like {@code .png} and {@code .ogg} are stored, other extensions can have their own
+ * deflate level. If deflate can't make an entry smaller than the ratio threshold, the entry is stored instead. <br/>
+ * Every rule keeps the statistics of the entries it compressed, including the CPU time and the bytes saved.
+ *
+ * @author APJifengc
+ */
+public class CompressionPolicy {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Rule> rules = new HashMap<>();
+    private final Map<String, Rule> allRules = new LinkedHashMap<>();
+    private final Rule defaultRule;
+    private final double ratioThreshold;
+
+    /**
+     * Create a new compression policy.
+     *
+     * @param stored         The extensions (without the dot) which should be stored without compression.
+     * @param levels         The deflate levels of the extensions (without the dot).
+     * @param defaultLevel   The deflate level of the other extensions, or {@code -1} for the default level.
+     * @param ratioThreshold If the deflated size is larger than the original size times this ratio,
+     *                       the entry is stored instead.
+     */
+    public CompressionPolicy(Collection<String> stored, Map<String, Integer> levels, int defaultLevel,
+                             double ratioThreshold) {
+        this.ratioThreshold = ratioThreshold;
+        this.defaultRule = addRule("default", ZipWriter.DEFLATED, defaultLevel);
+        if (!stored.isEmpty()) {
+            Rule storedRule = addRule("stored " + String.join("/", stored), ZipWriter.STORED, 0);
+            for (String extension : stored) rules.put(extension.toLowerCase(Locale.ROOT), storedRule);
+        }
+        for (Map.Entry<String, Integer> entry : levels.entrySet()) {
+            String extension = entry.getKey().toLowerCase(Locale.ROOT);
+            rules.put(extension, addRule(extension + " level " + entry.getValue(), ZipWriter.DEFLATED,
+                    entry.getValue()));
+        }
+    }
+
+    /**
+     * Create a policy which deflates every entry with the default level.
+     *
+     * @return The policy.
+     */
+    public static CompressionPolicy deflateAll() {
+        return new CompressionPolicy(new ArrayList<>(), new HashMap<>(), -1, 1);
+    }
+
+    private Rule addRule(String name, int method, int level) {
+        Rule rule = new Rule(name, method, level);
+        allRules.put(name, rule);
+        return rule;
+    }
+
+    /**
+     * Get the rule of an entry.
+     *
+     * @param name The entry's name.
+     * @return The rule.
+     */
+    public Rule getRule(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        if (dot <= slash) return defaultRule;
+        Rule rule = rules.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+        return rule == null ? defaultRule : rule;
+    }
+
+    /**
+     * Compress an entry on the current thread.
+     *
+     * @param name The entry's name.
+     * @param data The entry's content.
+     * @return The compressed entry.
+     */
+    public ZipWriter.CompressedEntry compress(String name, byte[] data) {
+        Rule rule = getRule(name);
+        long start = cpuTime();
+        ZipWriter.CompressedEntry entry = rule.method == ZipWriter.STORED
+                ? store(name, data) : ZipWriter.compress(name, data, rule.level);
+        return complete(rule, name, data, entry, cpuTime() - start);
+    }
+
+    /**
+     * Finish an entry compressed by the rule. <br/>
+     * The entry is stored instead if deflate didn't beat the ratio threshold.
+     *
+     * @param rule     The rule.
+     * @param name     The entry's name.
+     * @param data     The entry's content.
+     * @param entry    The entry compressed by the rule.
+     * @param cpuNanos The CPU time used to compress the entry.
+     * @return The entry to write.
+     */
+    ZipWriter.CompressedEntry complete(Rule rule, String name, byte[] data, ZipWriter.CompressedEntry entry,
+                                       long cpuNanos) {
+        if (entry.getMethod() == ZipWriter.DEFLATED && entry.getCompressedSize() > data.length * ratioThreshold) {
+            entry = new ZipWriter.CompressedEntry(name, ZipWriter.STORED, entry.getCrc(), data.length, data);
+            rule.fallbacks.increment();
+        }
+        rule.entries.increment();
+        rule.inputBytes.add(data.length);
+        rule.outputBytes.add(entry.getCompressedSize());
+        rule.cpuNanos.add(cpuNanos);
+        return entry;
+    }
+
+    /**
+     * Create an entry stored without compression.
+     *
+     * @param name The entry's name.
+     * @param data The entry's content.
+     * @return The entry.
+     */
+    public static ZipWriter.CompressedEntry store(String name, byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return new ZipWriter.CompressedEntry(name, ZipWriter.STORED, (int) crc.getValue(), data.length, data);
+    }
+
+    /**
+     * Get the CPU time of the current thread.
+     *
+     * @return The CPU time in nanoseconds, or the wall time if the CPU time is not supported.
+     */
+    static long cpuTime() {
+        if (THREADS.isCurrentThreadCpuTimeSupported()) return THREADS.getCurrentThreadCpuTime();
+        return System.nanoTime();
+    }
+
+    /**
+     * Get the statistics report of every rule which compressed any entry.
+     *
+     * @return The lines of the report.
+     */
+    public List<String> getReport() {
+        List<String> report = new ArrayList<>();
+        for (Rule rule : allRules.values()) {
+            long entries = rule.entries.sum();
+            if (entries == 0) continue;
+            long input = rule.inputBytes.sum();
+            long output = rule.outputBytes.sum();
+            report.add(String.format("%s: %d files, %d -> %d bytes, saved %d bytes, %d ms CPU, %d stored by ratio",
+                    rule.name, entries, input, output, input - output, rule.cpuNanos.sum() / 1000000,
+                    rule.fallbacks.sum()));
+        }
+        return report;
+    }
+
+    /**
+     * A rule of the policy.
+     */
+    public static class Rule {
+        private final String name;
+        private final int method;
+        private final int level;
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder inputBytes = new LongAdder();
+        private final LongAdder outputBytes = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder fallbacks = new LongAdder();
+
+        private Rule(String name, int method, int level) {
+            this.name = name;
+            this.method = method;
+            this.level = level;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getLevel() {
+            return level;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compress the zip entries on many threads. <br/>
+ * Every entry is compressed independently. Large entries are split into blocks like pigz does: every block is
+ * deflated on its own thread with the last 32KB of the previous block as the dictionary, and the blocks are
+ * ended with a sync flush so they can be joined into one deflate stream.
+ *
+ * @author APJifengc
+ */
+public class ParallelDeflater implements AutoCloseable {
+    private static final int DICTIONARY_SIZE = 32768;
+    private static final int BUFFER = 8192;
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+
+    /**
+     * Create a new parallel deflater.
+     *
+     * @param threads   The number of threads. If it is not positive, the number of available processors will be used.
+     * @param blockSize The size of the blocks large entries are split into.
+     */
+    public ParallelDeflater(int threads, int blockSize) {
+        if (threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+        this.blockSize = Math.max(blockSize, DICTIONARY_SIZE);
+        this.pool = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("YaResourcepackManager-Deflate-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Compress an entry on the threads of the deflater.
+     *
+     * @param name   The entry's name.
+     * @param data   The entry's content.
+     * @param policy The compression policy.
+     * @return The future of the compressed entry.
+     */
+    public Future<ZipWriter.CompressedEntry> submit(String name, byte[] data, CompressionPolicy policy) {
+        return pool.submit(() -> compress(name, data, policy));
+    }
+
+    private ZipWriter.CompressedEntry compress(String name, byte[] data, CompressionPolicy policy) {
+        CompressionPolicy.Rule rule = policy.getRule(name);
+        if (rule.getMethod() == ZipWriter.STORED || data.length <= blockSize) return policy.compress(name, data);
+        List<ForkJoinTask<byte[]>> blocks = new ArrayList<>();
+        LongAdder cpuNanos = new LongAdder();
+        for (int start = 0; start < data.length; start += blockSize) {
+            int from = start;
+            int to = Math.min(data.length, start + blockSize);
+            blocks.add(ForkJoinTask.adapt(() -> {
+                long begin = CompressionPolicy.cpuTime();
+                byte[] block = deflateBlock(data, from, to, rule.getLevel());
+                cpuNanos.add(CompressionPolicy.cpuTime() - begin);
+                return block;
+            }));
+        }
+        ForkJoinTask.invokeAll(blocks);
+        long begin = CompressionPolicy.cpuTime();
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2);
+        for (ForkJoinTask<byte[]> block : blocks) {
+            byte[] compressed = block.join();
+            output.write(compressed, 0, compressed.length);
+        }
+        cpuNanos.add(CompressionPolicy.cpuTime() - begin);
+        ZipWriter.CompressedEntry entry = new ZipWriter.CompressedEntry(name, ZipWriter.DEFLATED,
+                (int) crc.getValue(), data.length, output.toByteArray());
+        return policy.complete(rule, name, data, entry, cpuNanos.sum());
+    }
+
+    private static byte[] deflateBlock(byte[] data, int from, int to, int level) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (from > 0) {
+                int dictionaryStart = Math.max(0, from - DICTIONARY_SIZE);
+                deflater.setDictionary(Arrays.copyOfRange(data, dictionaryStart, from));
+            }
+            deflater.setInput(data, from, to - from);
+            ByteArrayOutputStream output = new ByteArrayOutputStream((to - from) / 2);
+            byte[] buffer = new byte[BUFFER];
+            if (to == data.length) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    output.write(buffer, 0, deflater.deflate(buffer));
+                }
+            } else {
+                // A sync flush ends the block on a byte boundary without ending the deflate stream.
+                int count;
+                do {
+                    count = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+                    output.write(buffer, 0, count);
+                } while (count == buffer.length || !deflater.needsInput());
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
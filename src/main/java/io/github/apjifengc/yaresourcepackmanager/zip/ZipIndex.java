@@ -0,0 +1,195 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * An index of the entries in an existing zip file. <br/>
+ * It is read from the central directory of the zip file, and keeps the offset, CRC and compressed size of every
+ * entry, so the compressed data can be copied into a new zip file without inflating and deflating it again.
+ *
+ * @author APJifengc
+ * @see ZipWriter#copy(ZipIndex, ZipIndex.Entry)
+ */
+public class ZipIndex implements Closeable {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+
+    private final FileChannel channel;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    /**
+     * Open a zip file and read its index.
+     *
+     * @param file The zip file.
+     * @throws IOException Throw when the file cannot be read or it isn't a valid zip file.
+     */
+    public ZipIndex(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            readCentralDirectory();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readCentralDirectory() throws IOException {
+        long size = channel.size();
+        int tailSize = (int) Math.min(size, END_SIZE + 0xFFFF);
+        ByteBuffer tail = read(size - tailSize, tailSize);
+        int end = -1;
+        for (int i = tailSize - END_SIZE; i >= 0; i--) {
+            if (tail.getInt(i) == END_SIGNATURE) {
+                end = i;
+                break;
+            }
+        }
+        if (end < 0) throw new ZipException("Cannot find the end of central directory.");
+        int count = tail.getShort(end + 10) & 0xFFFF;
+        long directorySize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long directoryOffset = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        ByteBuffer directory = read(directoryOffset, (int) directorySize);
+        int position = 0;
+        for (int i = 0; i < count; i++) {
+            if (directory.getInt(position) != CENTRAL_SIGNATURE) throw new ZipException("Broken central directory.");
+            int flags = directory.getShort(position + 8) & 0xFFFF;
+            int method = directory.getShort(position + 10) & 0xFFFF;
+            int time = directory.getInt(position + 12);
+            int crc = directory.getInt(position + 16);
+            long compressedSize = directory.getInt(position + 20) & 0xFFFFFFFFL;
+            long uncompressedSize = directory.getInt(position + 24) & 0xFFFFFFFFL;
+            int nameLength = directory.getShort(position + 28) & 0xFFFF;
+            int extraLength = directory.getShort(position + 30) & 0xFFFF;
+            int commentLength = directory.getShort(position + 32) & 0xFFFF;
+            long offset = directory.getInt(position + 42) & 0xFFFFFFFFL;
+            byte[] name = new byte[nameLength];
+            directory.position(position + CENTRAL_SIZE);
+            directory.get(name);
+            String entryName = new String(name, StandardCharsets.UTF_8);
+            // Encrypted, zip64 and unknown entries can't be copied, they have to be compressed again.
+            boolean copyable = (flags & 1) == 0 && (method == ZipWriter.STORED || method == ZipWriter.DEFLATED)
+                    && compressedSize != 0xFFFFFFFFL && uncompressedSize != 0xFFFFFFFFL && offset != 0xFFFFFFFFL;
+            if (copyable) {
+                entries.put(entryName, new Entry(entryName, method, time, crc, compressedSize, uncompressedSize, offset));
+            }
+            position += CENTRAL_SIZE + nameLength + extraLength + commentLength;
+        }
+    }
+
+    /**
+     * Get an entry.
+     *
+     * @param name The entry's name.
+     * @return The entry, or null if there isn't an entry with the name.
+     */
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Get all entries in the zip file.
+     *
+     * @return The entries.
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * Read the compressed data of an entry.
+     *
+     * @param entry The entry.
+     * @return The compressed data.
+     * @throws IOException Throw when the file cannot be read.
+     */
+    public byte[] readRaw(Entry entry) throws IOException {
+        ByteBuffer header = read(entry.offset, LOCAL_SIZE);
+        if (header.getInt(0) != LOCAL_SIGNATURE) throw new ZipException("Broken local header of " + entry.name);
+        int nameLength = header.getShort(26) & 0xFFFF;
+        int extraLength = header.getShort(28) & 0xFFFF;
+        ByteBuffer data = read(entry.offset + LOCAL_SIZE + nameLength + extraLength, (int) entry.compressedSize);
+        return data.array();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) throw new EOFException();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * An entry in the zip file.
+     */
+    public static class Entry {
+        private final String name;
+        private final int method;
+        private final int time;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+
+        Entry(String name, int method, int time, int crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.time = time;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getTime() {
+            return time;
+        }
+
+        public int getCrc() {
+            return crc;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * A simple zip writer. <br/>
+ * Different from {@link java.util.zip.ZipOutputStream}, the entries are compressed before they are written, so
+ * the compression can run on many threads, and the compressed data of an existing zip file can be copied into the
+ * new zip file directly. <br/>
+ * Entries compressed on other threads are submitted as futures, they are written in the order they were submitted
+ * once they are ready. <br/>
+ * A reproducible writer instead keeps all entries until it is closed, and writes them sorted by name with a fixed
+ * timestamp, so the same entries always make the same bytes. The compressed entries are kept on the heap up to
+ * {@link #MEMORY_LIMIT} bytes, and the rest is spilled into a temp file. <br/>
+ * Zip64 is not supported, the zip file can't be larger than 4GB or have more than 65535 entries.
+ *
+ * @author APJifengc
+ */
+public class ZipWriter implements Closeable {
+    public static final int STORED = 0;
+    public static final int DEFLATED = 8;
+    /**
+     * The max bytes of the compressed entries a reproducible writer keeps on the heap.
+     */
+    public static final long MEMORY_LIMIT = 16 * 1024 * 1024;
+
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int VERSION = 20;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int BUFFER = 8192;
+    /**
+     * The DOS time of 1980-01-01 00:00:00, used by the reproducible writers.
+     */
+    private static final int FIXED_TIME = (1 << 21) | (1 << 16);
+
+    private final OutputStream output;
+    private final MessageDigest digest;
+    private final int time;
+    private final boolean reproducible;
+    private final List<Record> records = new ArrayList<>();
+    private final Set<String> names = new HashSet<>();
+    private final Deque<Future<CompressedEntry>> pending = new ArrayDeque<>();
+    private final List<KeptEntry> kept = new ArrayList<>();
+    private long memory;
+    private File spillFile;
+    private FileChannel spill;
+    private long position;
+    private boolean closed;
+    private byte[] sha1;
+
+    /**
+     * Create a new zip writer.
+     *
+     * @param output The output stream to write the zip file into.
+     */
+    public ZipWriter(OutputStream output) {
+        this(output, false);
+    }
+
+    /**
+     * Create a new zip writer.
+     *
+     * @param output       The output stream to write the zip file into.
+     * @param reproducible If the entries should be sorted by name and have a fixed timestamp.
+     */
+    public ZipWriter(OutputStream output, boolean reproducible) {
+        this.digest = DigestUtils.getSha1Digest();
+        this.output = new BufferedOutputStream(new DigestOutputStream(output, digest), 65536);
+        this.reproducible = reproducible;
+        this.time = reproducible ? FIXED_TIME : toDosTime(LocalDateTime.now());
+    }
+
+    /**
+     * Compress an entry with the default level and write it.
+     *
+     * @param name The entry's name.
+     * @param data The entry's content.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void write(String name, byte[] data) throws IOException {
+        write(compress(name, data, Deflater.DEFAULT_COMPRESSION));
+    }
+
+    /**
+     * Compress an entry. <br/>
+     * This doesn't touch the zip file, so it can be called on any thread.
+     *
+     * @param name  The entry's name.
+     * @param data  The entry's content.
+     * @param level The deflate level, or {@code -1} for the default level.
+     * @return The compressed entry.
+     */
+    public static CompressedEntry compress(String name, byte[] data, int level) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+            byte[] buffer = new byte[BUFFER];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                compressed.write(buffer, 0, count);
+            }
+            return new CompressedEntry(name, DEFLATED, (int) crc.getValue(), data.length, compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Copy an entry from an existing zip file without compressing it again.
+     *
+     * @param index The index of the existing zip file.
+     * @param entry The entry to copy.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void copy(ZipIndex index, ZipIndex.Entry entry) throws IOException {
+        byte[] data = index.readRaw(entry);
+        write(new CompressedEntry(entry.getName(), entry.getMethod(), entry.getCrc(), entry.getSize(), data));
+    }
+
+    /**
+     * Write a compressed entry into the zip file.
+     *
+     * @param entry The compressed entry.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public void write(CompressedEntry entry) throws IOException {
+        submit(CompletableFuture.completedFuture(entry));
+    }
+
+    /**
+     * Submit an entry which is being compressed on another thread. <br/>
+     * The entry will be written after all entries submitted before it are written.
+     *
+     * @param entry The future of the compressed entry.
+     * @throws IOException Throw when a file error occurred.
+     */
+    public synchronized void submit(Future<CompressedEntry> entry) throws IOException {
+        if (closed) throw new IOException("The zip writer is closed.");
+        pending.add(entry);
+        if (reproducible) {
+            keep(false);
+        } else {
+            drain(false);
+        }
+    }
+
+    /**
+     * Keep the compressed entries of a reproducible writer until it is closed.
+     *
+     * @param wait If it should wait for the entries which are still being compressed.
+     */
+    private void keep(boolean wait) throws IOException {
+        while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+            CompressedEntry entry = get(pending.poll());
+            if (memory + entry.data.length <= MEMORY_LIMIT) {
+                memory += entry.data.length;
+                kept.add(new KeptEntry(entry, -1));
+                continue;
+            }
+            if (spill == null) {
+                spillFile = File.createTempFile("yrm-zip", ".tmp");
+                spill = FileChannel.open(spillFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+            long offset = spill.size();
+            ByteBuffer buffer = ByteBuffer.wrap(entry.data);
+            while (buffer.hasRemaining()) spill.write(buffer, offset + buffer.position());
+            kept.add(new KeptEntry(new CompressedEntry(entry.name, entry.method, entry.crc, entry.size, null,
+                    entry.data.length), offset));
+        }
+    }
+
+    private CompressedEntry load(KeptEntry kept) throws IOException {
+        if (kept.offset < 0) return kept.entry;
+        CompressedEntry entry = kept.entry;
+        ByteBuffer buffer = ByteBuffer.allocate((int) entry.compressedSize);
+        while (buffer.hasRemaining()) {
+            if (spill.read(buffer, kept.offset + buffer.position()) < 0) {
+                throw new IOException("The spill file of the zip is shorter than expected.");
+            }
+        }
+        return new CompressedEntry(entry.name, entry.method, entry.crc, entry.size, buffer.array());
+    }
+
+    /**
+     * Write the pending entries in order.
+     *
+     * @param wait If it should wait for the entries which are still being compressed.
+     */
+    private void drain(boolean wait) throws IOException {
+        while (!pending.isEmpty() && (wait || pending.peek().isDone())) {
+            writeEntry(get(pending.poll()));
+        }
+    }
+
+    private static CompressedEntry get(Future<CompressedEntry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing the entries.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to compress an entry.", e.getCause());
+        }
+    }
+
+    private void writeEntry(CompressedEntry entry) throws IOException {
+        if (!names.add(entry.name)) throw new ZipException("Duplicate entry: " + entry.name);
+        if (records.size() >= 0xFFFF) throw new ZipException("Too many entries, zip64 is not supported.");
+        byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+        Record record = new Record(name, entry, position);
+        ByteBuffer header = ByteBuffer.allocate(30 + name.length).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(LOCAL_SIGNATURE);
+        header.putShort((short) VERSION);
+        header.putShort((short) UTF8_FLAG);
+        header.putShort((short) entry.method);
+        header.putInt(time);
+        header.putInt(entry.crc);
+        header.putInt(entry.data.length);
+        header.putInt((int) entry.size);
+        header.putShort((short) name.length);
+        header.putShort((short) 0);
+        header.put(name);
+        writeRaw(header.array());
+        writeRaw(entry.data);
+        if (position > 0xFFFFFFFFL) throw new ZipException("The zip file is too large, zip64 is not supported.");
+        records.add(record);
+    }
+
+    private void writeRaw(byte[] data) throws IOException {
+        output.write(data);
+        position += data.length;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            if (reproducible) {
+                keep(true);
+                kept.sort(Comparator.comparing(entry -> entry.entry.name));
+                for (KeptEntry entry : kept) writeEntry(load(entry));
+                kept.clear();
+            }
+            drain(true);
+            long directoryOffset = position;
+            for (Record record : records) {
+                ByteBuffer header = ByteBuffer.allocate(46 + record.name.length).order(ByteOrder.LITTLE_ENDIAN);
+                header.putInt(CENTRAL_SIGNATURE);
+                header.putShort((short) VERSION);
+                header.putShort((short) VERSION);
+                header.putShort((short) UTF8_FLAG);
+                header.putShort((short) record.method);
+                header.putInt(time);
+                header.putInt(record.crc);
+                header.putInt((int) record.compressedSize);
+                header.putInt((int) record.size);
+                header.putShort((short) record.name.length);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putShort((short) 0);
+                header.putInt(0);
+                header.putInt((int) record.offset);
+                header.put(record.name);
+                writeRaw(header.array());
+            }
+            long directorySize = position - directoryOffset;
+            ByteBuffer end = ByteBuffer.allocate(22).order(ByteOrder.LITTLE_ENDIAN);
+            end.putInt(END_SIGNATURE);
+            end.putShort((short) 0);
+            end.putShort((short) 0);
+            end.putShort((short) records.size());
+            end.putShort((short) records.size());
+            end.putInt((int) directorySize);
+            end.putInt((int) directoryOffset);
+            end.putShort((short) 0);
+            writeRaw(end.array());
+        } finally {
+            try {
+                output.close();
+            } finally {
+                if (spill != null) {
+                    spill.close();
+                    Files.deleteIfExists(spillFile.toPath());
+                }
+            }
+        }
+        sha1 = digest.digest();
+    }
+
+    /**
+     * Get the SHA-1 of the zip file, it is computed while the zip file is written.
+     *
+     * @return The SHA-1, or null if the writer is not closed yet.
+     */
+    public synchronized byte[] getSha1() {
+        return sha1 == null ? null : sha1.clone();
+    }
+
+    /**
+     * Get the size of the zip file.
+     *
+     * @return The size in bytes.
+     */
+    public synchronized long getSize() {
+        return position;
+    }
+
+    private static int toDosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) return (1 << 21) | (1 << 16);
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16
+                | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    /**
+     * An entry which is already compressed and ready to be written.
+     */
+    public static class CompressedEntry {
+        private final String name;
+        private final int method;
+        private final int crc;
+        private final long size;
+        private final byte[] data;
+        private final long compressedSize;
+
+        /**
+         * Create a new compressed entry.
+         *
+         * @param name   The entry's name.
+         * @param method The compression method, {@link #STORED} or {@link #DEFLATED}.
+         * @param crc    The CRC-32 of the uncompressed content.
+         * @param size   The size of the uncompressed content.
+         * @param data   The compressed content.
+         */
+        public CompressedEntry(String name, int method, int crc, long size, byte[] data) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+            this.compressedSize = data.length;
+        }
+
+        private CompressedEntry(String name, int method, int crc, long size, byte[] data, long compressedSize) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+            this.compressedSize = compressedSize;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getMethod() {
+            return method;
+        }
+
+        public int getCrc() {
+            return crc;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCompressedSize() {
+            return compressedSize;
+        }
+
+        byte[] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * A compressed entry kept by a reproducible writer, its data is in the spill file if the offset isn't -1.
+     */
+    private static class KeptEntry {
+        private final CompressedEntry entry;
+        private final long offset;
+
+        private KeptEntry(CompressedEntry entry, long offset) {
+            this.entry = entry;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The central directory record of a written entry.
+     */
+    private static class Record {
+        private final byte[] name;
+        private final int method;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+
+        private Record(byte[] name, CompressedEntry entry, long offset) {
+            this.name = name;
+            this.method = entry.method;
+            this.crc = entry.crc;
+            this.compressedSize = entry.data.length;
+            this.size = entry.size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package io.github.apjifengc.yaresourcepackmanager;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.github.apjifengc.yaresourcepackmanager.component.FontCharacter;
+import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IComponent;
+
+/**
+ * Check that the fingerprint of the components covers all files they generate.
+ *
+ * @author APJifengc
+ */
+public class FingerprintTest {
+    @Test
+    public void testFontTextureChange() throws IOException {
+        String first = ResourcePack.getComponentsHash(font("first texture"));
+        assertEquals(first, ResourcePack.getComponentsHash(font("first texture")));
+        // The same font Json with another texture at the same path.
+        assertNotEquals(first, ResourcePack.getComponentsHash(font("second texture")));
+    }
+
+    private static List<IComponent> font(String texture) {
+        return Collections.singletonList(new FontCharacter(
+                new ByteArrayInputStream(texture.getBytes(StandardCharsets.UTF_8)), "default", "custom/a", 8, 8,
+                "\uE000"));
+    }
+}
@@ -0,0 +1,209 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * Check the NIO pack server over real sockets.
+ *
+ * @author APJifengc
+ */
+public class NioPackServerTest {
+    private static final Logger LOGGER = Logger.getLogger("NioPackServerTest");
+    private static final int SIZE = 300000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDownload() throws IOException {
+        byte[] data = data();
+        NioPackServer server = server(data, 16, 5000);
+        try (Socket socket = connect(server)) {
+            send(socket, "GET /pack.zip HTTP/1.1\r\nHost: localhost\r\n\r\n");
+            Response response = Response.read(socket.getInputStream(), false);
+            assertEquals(200, response.status);
+            assertEquals("\"" + DigestUtils.sha1Hex(data) + "\"", response.headers.get("etag"));
+            assertArrayEquals(data, response.body);
+        } finally {
+            server.stopService();
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws IOException {
+        byte[] data = data();
+        NioPackServer server = server(data, 16, 5000);
+        try (Socket socket = connect(server)) {
+            // Both requests are sent at once, the second one is answered after the first one.
+            send(socket, "GET /pack.zip HTTP/1.1\r\nRange: bytes=100-199\r\n\r\n"
+                    + "HEAD /pack.zip HTTP/1.1\r\n\r\n"
+                    + "GET /pack.zip HTTP/1.1\r\nRange: bytes=-10\r\nConnection: close\r\n\r\n");
+            InputStream input = socket.getInputStream();
+            Response range = Response.read(input, false);
+            assertEquals(206, range.status);
+            assertEquals("keep-alive", range.headers.get("connection"));
+            assertArrayEquals(Arrays.copyOfRange(data, 100, 200), range.body);
+            Response head = Response.read(input, true);
+            assertEquals(200, head.status);
+            assertEquals(String.valueOf(SIZE), head.headers.get("content-length"));
+            Response suffix = Response.read(input, false);
+            assertEquals(206, suffix.status);
+            assertEquals("close", suffix.headers.get("connection"));
+            assertArrayEquals(Arrays.copyOfRange(data, SIZE - 10, SIZE), suffix.body);
+            assertEquals(-1, input.read());
+        } finally {
+            server.stopService();
+        }
+    }
+
+    @Test
+    public void testBadRequest() throws IOException {
+        NioPackServer server = server(data(), 16, 5000);
+        try (Socket socket = connect(server)) {
+            send(socket, "NOT A REQUEST\r\n\r\n");
+            Response response = Response.read(socket.getInputStream(), false);
+            assertEquals(400, response.status);
+            assertEquals(-1, socket.getInputStream().read());
+        } finally {
+            server.stopService();
+        }
+    }
+
+    @Test
+    public void testMaxConnections() throws IOException {
+        NioPackServer server = server(data(), 1, 5000);
+        try (Socket first = connect(server)) {
+            waitFor(() -> server.getConnections() == 1);
+            try (Socket second = connect(server)) {
+                Response response = Response.read(second.getInputStream(), false);
+                assertEquals(503, response.status);
+            }
+            // The first connection is still served.
+            send(first, "HEAD /pack.zip HTTP/1.1\r\n\r\n");
+            assertEquals(200, Response.read(first.getInputStream(), true).status);
+        } finally {
+            server.stopService();
+        }
+    }
+
+    @Test
+    public void testIdleTimeout() throws IOException {
+        NioPackServer server = server(data(), 16, 200);
+        try (Socket socket = connect(server)) {
+            socket.setSoTimeout(5000);
+            // The connection is closed without a request.
+            assertEquals(-1, socket.getInputStream().read());
+            waitFor(() -> server.getConnections() == 0);
+        } finally {
+            server.stopService();
+        }
+    }
+
+    private NioPackServer server(byte[] data, int maxConnections, long idleTimeout) throws IOException {
+        PackStore store = new PackStore(folder.newFolder("packs"));
+        File file = store.newPackFile("1");
+        Files.write(file.toPath(), data);
+        store.publish(new PublishedPack(file, data.length, DigestUtils.sha1(data), "1", 1600000000000L));
+        NioPackServer server = new NioPackServer(LOGGER, 0, new PackHandler(store), 2, 16, maxConnections,
+                idleTimeout, 100);
+        server.startService();
+        return server;
+    }
+
+    private static Socket connect(NioPackServer server) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    private static void send(Socket socket, String request) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write(request.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+    }
+
+    private static byte[] data() {
+        byte[] data = new byte[SIZE];
+        new Random(SIZE).nextBytes(data);
+        return data;
+    }
+
+    private static void waitFor(Condition condition) throws IOException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.check()) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("Timed out.");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean check();
+    }
+
+    /**
+     * A response read from the socket.
+     */
+    private static class Response {
+        private int status;
+        private final Map<String, String> headers = new HashMap<>();
+        private byte[] body;
+
+        private static Response read(InputStream input, boolean head) throws IOException {
+            Response response = new Response();
+            String[] lines = readHead(input).split("\r\n");
+            response.status = Integer.parseInt(lines[0].split(" ")[1]);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                response.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT),
+                        lines[i].substring(colon + 1).trim());
+            }
+            String length = response.headers.get("content-length");
+            response.body = head || length == null ? new byte[0] : input.readNBytes(Integer.parseInt(length));
+            return response;
+        }
+
+        private static String readHead(InputStream input) throws IOException {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int matched = 0;
+            while (matched < 4) {
+                int b = input.read();
+                if (b < 0) throw new IOException("The connection is closed before the headers end.");
+                output.write(b);
+                matched = b == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (b == '\r' ? 1 : 0);
+            }
+            byte[] head = output.toByteArray();
+            return new String(head, 0, head.length - 4, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
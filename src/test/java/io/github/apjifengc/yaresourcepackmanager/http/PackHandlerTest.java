@@ -0,0 +1,193 @@
+package io.github.apjifengc.yaresourcepackmanager.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PackStore;
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * Check the responses of the pack handler to the range, conditional and HEAD requests.
+ *
+ * @author APJifengc
+ */
+public class PackHandlerTest {
+    private static final int SIZE = 1000;
+    private static final long BUILD_TIME = 1600000000000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRange() throws IOException {
+        PackHandler handler = handler();
+        assertRange(handler, "bytes=0-99", 0, 99);
+        assertRange(handler, "bytes=900-", 900, 999);
+        // The end of the range is cut at the end of the pack.
+        assertRange(handler, "bytes=900-5000", 900, 999);
+    }
+
+    @Test
+    public void testSuffixRange() throws IOException {
+        PackHandler handler = handler();
+        assertRange(handler, "bytes=-100", 900, 999);
+        // A suffix longer than the pack is the whole pack.
+        assertRange(handler, "bytes=-5000", 0, 999);
+    }
+
+    @Test
+    public void testUnsatisfiableRange() throws IOException {
+        PackHandler handler = handler();
+        for (String range : new String[]{"bytes=1000-", "bytes=5000-6000", "bytes=-0"}) {
+            try (PackResponse response = get(handler, "range", range)) {
+                assertEquals(416, response.getStatus());
+                assertEquals("bytes */" + SIZE, response.getHeaders().get("Content-Range"));
+            }
+        }
+    }
+
+    @Test
+    public void testWholePackFallback() throws IOException {
+        PackHandler handler = handler();
+        // Many ranges, invalid ranges and other units are answered with the whole pack.
+        for (String range : new String[]{"bytes=0-99,200-299", "bytes=99-0", "bytes=a-b", "items=0-1", "bytes=-"}) {
+            try (PackResponse response = get(handler, "range", range)) {
+                assertWhole(response);
+            }
+        }
+    }
+
+    @Test
+    public void testIfRange() throws IOException {
+        PackStore store = store();
+        PackHandler handler = new PackHandler(store);
+        PublishedPack pack = store.getCurrent();
+        try (PackResponse response = get(handler, "range", "bytes=100-199", "if-range", PackHandler.getETag(pack))) {
+            assertEquals(206, response.getStatus());
+        }
+        try (PackResponse response = get(handler, "range", "bytes=100-199", "if-range",
+                PackHandler.getLastModified(pack))) {
+            assertEquals(206, response.getStatus());
+        }
+        // The client resumes another version, so it gets the whole current one.
+        try (PackResponse response = get(handler, "range", "bytes=100-199", "if-range",
+                "\"" + DigestUtils.sha1Hex("another pack") + "\"")) {
+            assertWhole(response);
+        }
+    }
+
+    @Test
+    public void testNotModified() throws IOException {
+        PackStore store = store();
+        PackHandler handler = new PackHandler(store);
+        String etag = PackHandler.getETag(store.getCurrent());
+        for (String tag : new String[]{etag, "W/" + etag, "*", "\"other\", " + etag}) {
+            try (PackResponse response = get(handler, "if-none-match", tag)) {
+                assertEquals(304, response.getStatus());
+                assertFalse(response.hasBody());
+                assertEquals(SIZE, response.getLength());
+                assertEquals(etag, response.getHeaders().get("ETag"));
+            }
+        }
+        try (PackResponse response = get(handler, "if-none-match", "\"other\"")) {
+            assertWhole(response);
+        }
+        // If-None-Match wins over If-Modified-Since.
+        try (PackResponse response = get(handler, "if-none-match", "\"other\"", "if-modified-since",
+                PackHandler.getLastModified(store.getCurrent()))) {
+            assertWhole(response);
+        }
+    }
+
+    @Test
+    public void testModifiedSince() throws IOException {
+        PackStore store = store();
+        PackHandler handler = new PackHandler(store);
+        String lastModified = PackHandler.getLastModified(store.getCurrent());
+        try (PackResponse response = get(handler, "if-modified-since", lastModified)) {
+            assertEquals(304, response.getStatus());
+            assertEquals(lastModified, response.getHeaders().get("Last-Modified"));
+        }
+        try (PackResponse response = get(handler, "if-modified-since", "Thu, 01 Jan 2015 00:00:00 GMT")) {
+            assertWhole(response);
+        }
+        try (PackResponse response = get(handler, "if-modified-since", "yesterday")) {
+            assertWhole(response);
+        }
+    }
+
+    @Test
+    public void testHead() throws IOException {
+        PackHandler handler = handler();
+        try (PackResponse response = request(handler, "HEAD")) {
+            assertEquals(200, response.getStatus());
+            assertFalse(response.hasBody());
+            assertEquals(SIZE, response.getLength());
+            assertEquals("bytes", response.getHeaders().get("Accept-Ranges"));
+        }
+        try (PackResponse response = request(handler, "HEAD", "range", "bytes=100-199")) {
+            assertEquals(206, response.getStatus());
+            assertFalse(response.hasBody());
+            assertEquals(100, response.getLength());
+            assertEquals("bytes 100-199/" + SIZE, response.getHeaders().get("Content-Range"));
+        }
+        try (PackResponse response = request(handler, "POST")) {
+            assertEquals(405, response.getStatus());
+            assertEquals("GET, HEAD", response.getHeaders().get("Allow"));
+        }
+    }
+
+    private static void assertRange(PackHandler handler, String range, long first, long last) {
+        try (PackResponse response = get(handler, "range", range)) {
+            assertEquals(206, response.getStatus());
+            assertTrue(response.hasBody());
+            assertEquals(first, response.getOffset());
+            assertEquals(last - first + 1, response.getLength());
+            assertEquals("bytes " + first + "-" + last + "/" + SIZE, response.getHeaders().get("Content-Range"));
+        }
+    }
+
+    private static void assertWhole(PackResponse response) {
+        assertEquals(200, response.getStatus());
+        assertEquals(0, response.getOffset());
+        assertEquals(SIZE, response.getLength());
+        assertNull(response.getHeaders().get("Content-Range"));
+    }
+
+    private static PackResponse get(PackHandler handler, String... headers) {
+        return request(handler, "GET", headers);
+    }
+
+    private static PackResponse request(PackHandler handler, String method, String... headers) {
+        Map<String, String> map = new HashMap<>();
+        for (int i = 0; i < headers.length; i += 2) map.put(headers[i], headers[i + 1]);
+        return handler.handle(method, "/pack.zip", map);
+    }
+
+    private PackHandler handler() throws IOException {
+        return new PackHandler(store());
+    }
+
+    private PackStore store() throws IOException {
+        PackStore store = new PackStore(folder.getRoot());
+        File file = store.newPackFile("1");
+        byte[] data = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) data[i] = (byte) i;
+        Files.write(file.toPath(), data);
+        store.publish(new PublishedPack(file, SIZE, DigestUtils.sha1(data), "1", BUILD_TIME));
+        return store;
+    }
+}
@@ -0,0 +1,75 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.junit.Test;
+
+/**
+ * Check that a superseded build is cancelled through its token, and never interrupted.
+ *
+ * @author APJifengc
+ */
+public class BuildCoordinatorTest {
+    private static final Logger LOGGER = Logger.getLogger("BuildCoordinatorTest");
+
+    @Test
+    public void testSupersede() throws Exception {
+        PublishedPack second = new PublishedPack(new File("second.zip"), 0, new byte[20], "second", 0);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        AtomicInteger builds = new AtomicInteger();
+        BuildCoordinator coordinator = new BuildCoordinator(LOGGER, 0, token -> {
+            if (builds.incrementAndGet() > 1) return second;
+            started.countDown();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!token.isCancelled() && System.currentTimeMillis() < deadline) Thread.onSpinWait();
+            interrupted.set(Thread.currentThread().isInterrupted());
+            token.check();
+            throw new AssertionError("The build is not cancelled.");
+        });
+        try {
+            CompletableFuture<PublishedPack> first = coordinator.request();
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<PublishedPack> next = coordinator.request();
+            // The superseded request gets the pack of the new build.
+            assertEquals(second, first.get(5, TimeUnit.SECONDS));
+            assertEquals(second, next.get(5, TimeUnit.SECONDS));
+            assertFalse(interrupted.get());
+            assertEquals(2, builds.get());
+        } finally {
+            coordinator.close();
+        }
+    }
+
+    @Test
+    public void testSkipAfterCancel() throws Exception {
+        BuildToken token = new BuildToken();
+        AtomicInteger runs = new AtomicInteger();
+        List<BuildExecutor.BuildTask> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            runs.incrementAndGet();
+            token.cancel();
+        });
+        for (int i = 0; i < 10; i++) tasks.add(runs::incrementAndGet);
+        try (BuildExecutor executor = new BuildExecutor(1)) {
+            executor.invokeAll(tasks, token);
+            throw new AssertionError("The cancelled build is completed.");
+        } catch (InterruptedIOException expected) {
+            // The tasks after the cancellation are skipped.
+            assertEquals(1, runs.get());
+        }
+    }
+}
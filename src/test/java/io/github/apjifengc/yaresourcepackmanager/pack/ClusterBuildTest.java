@@ -0,0 +1,179 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.apjifengc.yaresourcepackmanager.ResourcePack;
+import io.github.apjifengc.yaresourcepackmanager.component.FontCharacter;
+import io.github.apjifengc.yaresourcepackmanager.component.interfaces.IComponent;
+
+/**
+ * Check the cluster build over a local folder standing in for the shared folder.
+ *
+ * @author APJifengc
+ */
+public class ClusterBuildTest {
+    private static final Logger LOGGER = Logger.getLogger("ClusterBuildTest");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testElection() throws Exception {
+        File shared = folder.newFolder("shared");
+        AtomicInteger builds = new AtomicInteger();
+        ExecutorService nodes = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<PublishedPack>> packs = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                String node = "node" + i;
+                PackStore store = store(node);
+                // A long stale timeout, so a slow heartbeat thread doesn't let another node take over.
+                ClusterBuild cluster = new ClusterBuild(LOGGER, shared, node, 100, 5000);
+                packs.add(nodes.submit(() -> cluster.obtain("fingerprint", store, () -> {
+                    builds.incrementAndGet();
+                    sleep(500);
+                    return pack(store, node, node);
+                })));
+            }
+            String sha1 = packs.get(0).get().getSha1Hex();
+            for (Future<PublishedPack> pack : packs) {
+                assertEquals(sha1, pack.get().getSha1Hex());
+                assertEquals(sha1, DigestUtils.sha1Hex(Files.readAllBytes(pack.get().getFile().toPath())));
+            }
+            assertEquals(1, builds.get());
+        } finally {
+            nodes.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDifferentRegistries() throws IOException {
+        File shared = folder.newFolder("shared");
+        // Two nodes with the same font, but different textures.
+        String first = ResourcePack.getComponentsHash(font("first texture"));
+        String second = ResourcePack.getComponentsHash(font("second texture"));
+        assertNotEquals(first, second);
+        PackStore firstStore = store("first");
+        PackStore secondStore = store("second");
+        PublishedPack firstPack = cluster(shared, "first").obtain(first, firstStore,
+                () -> pack(firstStore, "first", "first pack"));
+        PublishedPack secondPack = cluster(shared, "second").obtain(second, secondStore,
+                () -> pack(secondStore, "second", "second pack"));
+        assertEquals(DigestUtils.sha1Hex("first pack"), firstPack.getSha1Hex());
+        assertEquals(DigestUtils.sha1Hex("second pack"), secondPack.getSha1Hex());
+    }
+
+    @Test
+    public void testStaleLock() throws IOException {
+        File shared = folder.newFolder("shared");
+        File directory = new File(shared, "fingerprint");
+        directory.mkdirs();
+        // The lock of a crashed builder, its heartbeat never changes.
+        Files.write(new File(directory, "build.lock").toPath(), "crashed/1#1".getBytes(StandardCharsets.UTF_8));
+        PackStore store = store("node");
+        PublishedPack pack = cluster(shared, "node").obtain("fingerprint", store, () -> pack(store, "node", "pack"));
+        assertEquals(DigestUtils.sha1Hex("pack"), pack.getSha1Hex());
+        assertFalse(new File(directory, "build.lock").exists());
+    }
+
+    @Test
+    public void testFailedBuild() throws IOException {
+        File shared = folder.newFolder("shared");
+        PackStore store = store("node");
+        try {
+            cluster(shared, "node").obtain("fingerprint", store, () -> {
+                throw new IOException("The build failed.");
+            });
+            throw new AssertionError("The failed build is shared.");
+        } catch (IOException expected) {
+            // The build failed.
+        }
+        File directory = new File(shared, "fingerprint");
+        // The lock is released and no half-written pack is left.
+        assertFalse(new File(directory, "build.lock").exists());
+        assertFalse(new File(directory, "artifact.json").exists());
+        PublishedPack pack = cluster(shared, "other").obtain("fingerprint", store, () -> pack(store, "other", "pack"));
+        assertEquals(DigestUtils.sha1Hex("pack"), pack.getSha1Hex());
+    }
+
+    @Test
+    public void testLostLock() throws Exception {
+        File shared = folder.newFolder("shared");
+        File lock = new File(new File(shared, "fingerprint"), "build.lock");
+        PackStore slowStore = store("slow");
+        ExecutorService node = Executors.newSingleThreadExecutor();
+        try {
+            Future<PublishedPack> slow = node.submit(() -> cluster(shared, "slow").obtain("fingerprint", slowStore,
+                    () -> {
+                        sleep(2000);
+                        return pack(slowStore, "slow", "slow pack");
+                    }));
+            while (!lock.exists()) sleep(10);
+            // The lock of the slow builder is broken, and another server takes over.
+            sleep(200);
+            assertTrue(lock.delete());
+            PackStore fastStore = store("fast");
+            PublishedPack fast = cluster(shared, "fast").obtain("fingerprint", fastStore,
+                    () -> pack(fastStore, "fast", "fast pack"));
+            assertEquals(DigestUtils.sha1Hex("fast pack"), fast.getSha1Hex());
+            // The slow builder gives up its own pack and uses the one of the new builder.
+            assertEquals(fast.getSha1Hex(), slow.get().getSha1Hex());
+            String[] names = new File(shared, "fingerprint").list();
+            assertTrue(names != null && names.length == 2);
+        } finally {
+            node.shutdownNow();
+        }
+    }
+
+    private PackStore store(String node) throws IOException {
+        return new PackStore(folder.newFolder(node));
+    }
+
+    private static ClusterBuild cluster(File shared, String node) {
+        return new ClusterBuild(LOGGER, shared, node, 100, 300);
+    }
+
+    private static PublishedPack pack(PackStore store, String buildId, String content) throws IOException {
+        File file = store.newPackFile(buildId);
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), data);
+        return new PublishedPack(file, data.length, DigestUtils.sha1(data), buildId, System.currentTimeMillis());
+    }
+
+    private static List<IComponent> font(String texture) {
+        return Collections.singletonList(new FontCharacter(
+                new ByteArrayInputStream(texture.getBytes(StandardCharsets.UTF_8)), "default", "custom/a", 8, 8,
+                "\uE000"));
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+}
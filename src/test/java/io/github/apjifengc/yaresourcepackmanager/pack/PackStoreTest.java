@@ -0,0 +1,75 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check that the pack store deletes the replaced versions only after their downloads are finished.
+ *
+ * @author APJifengc
+ */
+public class PackStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReleaseAfterDownload() throws IOException {
+        PackStore store = new PackStore(folder.getRoot());
+        PublishedPack first = pack(store, "1", "first");
+        PublishedPack second = pack(store, "2", "second");
+        store.publish(first);
+        PublishedPack download = store.acquire();
+        ByteBuffer buffer = download.getBuffer();
+        store.publish(second);
+        // The download is still running, so the file and the mapping are kept.
+        assertTrue(first.getFile().isFile());
+        assertEquals('f', buffer.get());
+        store.release(download);
+        assertFalse(first.getFile().exists());
+        try {
+            first.getBuffer();
+            throw new AssertionError("The released pack is mapped again.");
+        } catch (IOException expected) {
+            // The pack is released.
+        }
+        assertEquals('s', second.getBuffer().get());
+    }
+
+    @Test
+    public void testRestoreHistory() throws IOException {
+        PackStore store = new PackStore(folder.getRoot());
+        PublishedPack old = pack(store, "1", "old");
+        PublishedPack kept = pack(store, "2", "kept");
+        PublishedPack current = pack(store, "3", "current");
+        old.getFile().setLastModified(1000);
+        kept.getFile().setLastModified(2000);
+        // A restarted server still serves the versions of its earlier run by the retention policy.
+        PackStore restarted = new PackStore(folder.getRoot());
+        restarted.setRetention(1, 0);
+        restarted.publish(current);
+        restarted.restoreHistory();
+        assertNotNull(restarted.acquire(kept.getSha1Hex()));
+        assertTrue(kept.getFile().isFile());
+        assertFalse(old.getFile().exists());
+    }
+
+    private static PublishedPack pack(PackStore store, String buildId, String content) throws IOException {
+        File file = store.newPackFile(buildId);
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(file.toPath(), data);
+        return new PublishedPack(file, data.length, DigestUtils.sha1(data), buildId, 0);
+    }
+}
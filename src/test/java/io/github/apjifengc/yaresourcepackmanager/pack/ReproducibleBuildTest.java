@@ -0,0 +1,144 @@
+package io.github.apjifengc.yaresourcepackmanager.pack;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.apjifengc.yaresourcepackmanager.ResourcePack;
+import io.github.apjifengc.yaresourcepackmanager.component.FontCharacter;
+import io.github.apjifengc.yaresourcepackmanager.component.interfaces.ICollectionComponent;
+import io.github.apjifengc.yaresourcepackmanager.zip.CompressionPolicy;
+
+/**
+ * Check that the reproducible builds make the same zip no matter which order the files are generated in.
+ *
+ * @author APJifengc
+ */
+public class ReproducibleBuildTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteOrder() throws IOException {
+        byte[] first = build("a.zip", sink -> {
+            sink.write("assets/minecraft/textures/a.png", bytes("a"));
+            sink.write("assets/minecraft/textures/b.png", bytes("b"));
+        });
+        byte[] second = build("b.zip", sink -> {
+            sink.write("assets/minecraft/textures/b.png", bytes("b"));
+            sink.write("assets/minecraft/textures/a.png", bytes("a"));
+        });
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testFontRegistrationOrder() throws IOException {
+        List<ICollectionComponent> fonts = new ArrayList<>(Arrays.asList(
+                font("custom/a", "\uE000"), font("custom/b", "\uE001"), font("custom/c", "\uE002")));
+        List<ICollectionComponent> reversed = new ArrayList<>(fonts);
+        Collections.reverse(reversed);
+        ResourcePack.sortCollection(fonts);
+        ResourcePack.sortCollection(reversed);
+        byte[] first = build("a.zip", sink -> fonts.get(0).handleResource(sink, fonts));
+        byte[] second = build("b.zip", sink -> reversed.get(0).handleResource(sink, reversed));
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    public void testLastRegisteredWins() throws IOException {
+        File output = folder.newFile("c.zip");
+        try (ZipPackSink sink = new ZipPackSink(output, null, null, CompressionPolicy.deflateAll(), true)) {
+            OrderedPackSink ordered = new OrderedPackSink(sink);
+            // The later component is generated first.
+            ordered.view(1).write("assets/minecraft/textures/a.png", bytes("later"));
+            ordered.view(0).write("assets/minecraft/textures/a.png", bytes("earlier"));
+            ordered.flush();
+        }
+        try (ZipFile zip = new ZipFile(output)) {
+            ZipEntry entry = zip.getEntry("assets/minecraft/textures/a.png");
+            assertEquals("later", new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testDeclaredPaths() throws IOException {
+        File output = folder.newFile("d.zip");
+        try (ZipPackSink sink = new ZipPackSink(output, null, null, CompressionPolicy.deflateAll(), true);
+             OrderedPackSink ordered = new OrderedPackSink(sink,
+                     Collections.singletonMap("assets/minecraft/textures/a.png", 1))) {
+            // The file of the last declaring component is written at once, the other one is dropped.
+            ordered.view(1).write("assets/minecraft/textures/a.png", bytes("later"));
+            ordered.view(0).write("assets/minecraft/textures/a.png", bytes("earlier"));
+            ordered.flush();
+        }
+        try (ZipFile zip = new ZipFile(output)) {
+            ZipEntry entry = zip.getEntry("assets/minecraft/textures/a.png");
+            assertEquals("later", new String(zip.getInputStream(entry).readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        // The random files can't be compressed, so they are above the memory limits of both sinks.
+        int size = (int) (OrderedPackSink.MEMORY_LIMIT / 2) + 1;
+        List<byte[]> files = new ArrayList<>();
+        Random random = new Random(size);
+        for (int i = 0; i < 3; i++) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            files.add(data);
+        }
+        File output = folder.newFile("e.zip");
+        try (ZipPackSink sink = new ZipPackSink(output, null, null, CompressionPolicy.deflateAll(), true);
+             OrderedPackSink ordered = new OrderedPackSink(sink)) {
+            for (int i = files.size() - 1; i >= 0; i--) {
+                ordered.view(i).write("assets/minecraft/sounds/" + i + ".ogg", files.get(i));
+            }
+            ordered.flush();
+        }
+        try (ZipFile zip = new ZipFile(output)) {
+            for (int i = 0; i < files.size(); i++) {
+                ZipEntry entry = zip.getEntry("assets/minecraft/sounds/" + i + ".ogg");
+                assertArrayEquals(files.get(i), zip.getInputStream(entry).readAllBytes());
+            }
+        }
+    }
+
+    private byte[] build(String name, Generator generator) throws IOException {
+        File output = folder.newFile(name);
+        ZipPackSink zip;
+        try (ZipPackSink sink = new ZipPackSink(output, null, null, CompressionPolicy.deflateAll(), true)) {
+            zip = sink;
+            generator.generate(new CanonicalPackSink(sink));
+        }
+        return zip.getSha1();
+    }
+
+    private static FontCharacter font(String file, String chars) {
+        return new FontCharacter(new ByteArrayInputStream(bytes(file)), "default", file, 8, 8, chars);
+    }
+
+    private static byte[] bytes(String content) {
+        return content.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Generator {
+        void generate(PackSink sink) throws IOException;
+    }
+}
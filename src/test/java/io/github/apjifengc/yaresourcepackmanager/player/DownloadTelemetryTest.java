@@ -0,0 +1,42 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check that the players' tokens are stable, so their pack URLs stay cacheable.
+ *
+ * @author APJifengc
+ */
+public class DownloadTelemetryTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testStableToken() throws IOException {
+        File secret = new File(folder.getRoot(), "telemetry.key");
+        UUID player = UUID.randomUUID();
+        DownloadTelemetry telemetry = new DownloadTelemetry();
+        telemetry.loadSecret(secret);
+        String token = telemetry.getToken(player);
+        // The player quits and joins again.
+        telemetry.remove(player);
+        assertEquals(token, telemetry.getToken(player));
+        // The server is restarted.
+        DownloadTelemetry restarted = new DownloadTelemetry();
+        restarted.loadSecret(secret);
+        assertEquals(token, restarted.getToken(player));
+        assertEquals(player, restarted.getPlayer(token));
+        assertFalse(token.equals(restarted.getToken(UUID.randomUUID())));
+        assertTrue(token.matches("[0-9a-f]{32}"));
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.apjifengc.yaresourcepackmanager.player;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check the retry queue and the expiry of the player states.
+ *
+ * @author APJifengc
+ */
+public class PlayerStateStoreTest {
+    private static final byte[] SHA1 = new byte[20];
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDueRetries() {
+        PlayerStateStore store = new PlayerStateStore();
+        store.setRetry(1000, 10000, 3);
+        UUID player = UUID.randomUUID();
+        store.prompt(player, SHA1);
+        long failed = store.update(player, PackState.FAILED).getUpdateTime();
+        assertTrue(store.getDueRetries(failed + 999).isEmpty());
+        assertEquals(Collections.singletonList(player), store.getDueRetries(failed + 1000));
+        // Every retry is returned only once.
+        assertTrue(store.getDueRetries(failed + 1000).isEmpty());
+        // A failure which is followed by a successful download is not retried.
+        store.prompt(player, SHA1);
+        failed = store.update(player, PackState.FAILED).getUpdateTime();
+        store.update(player, PackState.LOADED);
+        assertTrue(store.getDueRetries(failed + 10000).isEmpty());
+    }
+
+    @Test
+    public void testRetriesAfterLoad() throws IOException {
+        File file = new File(folder.getRoot(), "player_states.dat");
+        PlayerStateStore store = new PlayerStateStore();
+        UUID player = UUID.randomUUID();
+        store.prompt(player, SHA1);
+        long failed = store.update(player, PackState.FAILED).getUpdateTime();
+        store.save(file);
+        PlayerStateStore loaded = PlayerStateStore.load(file);
+        loaded.setRetry(1000, 10000, 3);
+        assertEquals(Collections.singletonList(player), loaded.getDueRetries(failed + 1000));
+    }
+
+    @Test
+    public void testExpiry() {
+        PlayerStateStore store = new PlayerStateStore();
+        store.setRetry(1000, 10000, 1);
+        store.setExpiry(60000);
+        UUID idle = UUID.randomUUID();
+        store.prompt(idle, SHA1);
+        long time = store.update(idle, PackState.LOADED).getUpdateTime();
+        UUID failed = UUID.randomUUID();
+        store.prompt(failed, SHA1);
+        store.update(failed, PackState.FAILED);
+        assertEquals(0, store.prune(time + 60000));
+        // The failed download still has a retry, so only the idle state is dropped.
+        assertEquals(1, store.prune(time + 60001));
+        assertNull(store.get(idle));
+        assertNotNull(store.get(failed));
+        // The retries are given up after the second failure, so the state is dropped then.
+        store.update(failed, PackState.FAILED);
+        assertEquals(1, store.prune(System.currentTimeMillis() + 60001));
+        assertNull(store.get(failed));
+    }
+}
@@ -0,0 +1,229 @@
+package io.github.apjifengc.yaresourcepackmanager.publish;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.github.apjifengc.yaresourcepackmanager.pack.PublishedPack;
+
+/**
+ * Check the HTTP pack publisher against the local object store. <br/>
+ * The requests go through a small proxy, which counts them and breaks some of them.
+ *
+ * @author APJifengc
+ */
+public class HttpPackPublisherTest {
+    private static final Logger LOGGER = Logger.getLogger("HttpPackPublisherTest");
+    private static final int PART = 65536;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+)");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testMultipartUpload() throws IOException {
+        byte[] data = random(5 * PART - 100);
+        PublishedPack pack = pack(data, DigestUtils.sha1(data));
+        LocalObjectStore store = store();
+        Proxy proxy = new Proxy(store);
+        try {
+            proxy.publisher().publish(pack);
+            assertEquals(5, proxy.puts.get());
+            assertArrayEquals(data, Files.readAllBytes(object(pack).toPath()));
+        } finally {
+            proxy.stop();
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testResumeAfterFailedPart() throws IOException {
+        byte[] data = random(5 * PART);
+        PublishedPack pack = pack(data, DigestUtils.sha1(data));
+        LocalObjectStore store = store();
+        Proxy proxy = new Proxy(store);
+        // The third part only arrives half.
+        proxy.failAt = 3;
+        try {
+            proxy.publisher().publish(pack);
+            assertArrayEquals(data, Files.readAllBytes(object(pack).toPath()));
+            // Only the missing half of the failed part is sent again.
+            assertEquals(data.length + PART / 2, proxy.sent.get());
+        } finally {
+            proxy.stop();
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testSkipWhenExists() throws IOException {
+        byte[] data = random(PART);
+        PublishedPack pack = pack(data, DigestUtils.sha1(data));
+        LocalObjectStore store = store();
+        Proxy proxy = new Proxy(store);
+        try {
+            proxy.publisher().publish(pack);
+            int puts = proxy.puts.get();
+            proxy.publisher().publish(pack);
+            assertEquals(puts, proxy.puts.get());
+        } finally {
+            proxy.stop();
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testRejectWrongSha1() throws IOException {
+        byte[] data = random(2 * PART);
+        PublishedPack pack = pack(data, DigestUtils.sha1("another pack"));
+        LocalObjectStore store = store();
+        Proxy proxy = new Proxy(store);
+        try {
+            proxy.publisher().publish(pack);
+            throw new AssertionError("The pack with a wrong SHA-1 is uploaded.");
+        } catch (IOException expected) {
+            assertFalse(object(pack).exists());
+        } finally {
+            proxy.stop();
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testNoProgress() throws IOException {
+        byte[] data = random(3 * PART);
+        PublishedPack pack = pack(data, DigestUtils.sha1(data));
+        LocalObjectStore store = store();
+        Proxy proxy = new Proxy(store);
+        // A proxy which drops the Range header, so the upload never gets further.
+        proxy.dropRange = true;
+        try {
+            proxy.publisher().publish(pack);
+            throw new AssertionError("The upload without progress is finished.");
+        } catch (IOException expected) {
+            assertTrue(proxy.puts.get() < 20);
+        } finally {
+            proxy.stop();
+            store.stop();
+        }
+    }
+
+    private LocalObjectStore store() throws IOException {
+        LocalObjectStore store = new LocalObjectStore(LOGGER, 0, folder.newFolder("store"));
+        store.start();
+        return store;
+    }
+
+    private File object(PublishedPack pack) {
+        return new File(new File(folder.getRoot(), "store"), pack.getSha1Hex() + ".zip");
+    }
+
+    private PublishedPack pack(byte[] data, byte[] sha1) throws IOException {
+        File file = folder.newFile("pack.zip");
+        Files.write(file.toPath(), data);
+        return new PublishedPack(file, data.length, sha1, "test", 0);
+    }
+
+    private static byte[] random(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * A proxy in front of the object store.
+     */
+    private static class Proxy {
+        private final HttpServer server;
+        private final int target;
+        private final AtomicInteger puts = new AtomicInteger();
+        private final AtomicLong sent = new AtomicLong();
+        private volatile int failAt = -1;
+        private volatile boolean dropRange;
+
+        private Proxy(LocalObjectStore store) throws IOException {
+            target = store.getPort();
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            server.createContext("/", this::handle);
+            server.start();
+        }
+
+        private HttpPackPublisher publisher() {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort();
+            return new HttpPackPublisher(LOGGER, url, url, PART, 2, Collections.emptyMap());
+        }
+
+        private void stop() {
+            server.stop(0);
+        }
+
+        private void handle(HttpExchange exchange) throws IOException {
+            try {
+                String method = exchange.getRequestMethod();
+                byte[] body = exchange.getRequestBody().readAllBytes();
+                String range = exchange.getRequestHeaders().getFirst("Content-Range");
+                boolean fail = false;
+                if (method.equals("PUT")) {
+                    int put = puts.incrementAndGet();
+                    sent.addAndGet(body.length);
+                    Matcher matcher = range == null ? null : CONTENT_RANGE.matcher(range);
+                    if (put == failAt && matcher != null && matcher.matches()) {
+                        long start = Long.parseLong(matcher.group(1));
+                        body = Arrays.copyOf(body, body.length / 2);
+                        range = "bytes " + start + "-" + (start + body.length - 1) + "/" + matcher.group(3);
+                        fail = true;
+                    }
+                }
+                HttpURLConnection connection = (HttpURLConnection) new URL("http://127.0.0.1:" + target
+                        + exchange.getRequestURI()).openConnection();
+                connection.setRequestMethod(method);
+                connection.setInstanceFollowRedirects(false);
+                if (range != null) connection.setRequestProperty("Content-Range", range);
+                if (method.equals("PUT")) {
+                    connection.setDoOutput(true);
+                    connection.setFixedLengthStreamingMode(body.length);
+                    try (OutputStream output = connection.getOutputStream()) {
+                        output.write(body);
+                    }
+                }
+                int code = connection.getResponseCode();
+                String received = connection.getHeaderField("Range");
+                long length = connection.getContentLengthLong();
+                connection.disconnect();
+                if (fail) code = 500;
+                if (received != null && !dropRange) exchange.getResponseHeaders().set("Range", received);
+                if (method.equals("HEAD") && length >= 0) {
+                    exchange.getResponseHeaders().set("Content-Length", String.valueOf(length));
+                }
+                exchange.sendResponseHeaders(code, -1);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.junit.Test;
+
+/**
+ * Check that the blocks of the parallel deflater are joined into one valid deflate stream.
+ *
+ * @author APJifengc
+ */
+public class ParallelDeflaterTest {
+    private static final int BLOCK_SIZE = 65536;
+
+    @Test
+    public void testSmallEntry() throws Exception {
+        roundTrip(data(BLOCK_SIZE / 3));
+        roundTrip(data(BLOCK_SIZE));
+    }
+
+    @Test
+    public void testSplitEntry() throws Exception {
+        roundTrip(data(BLOCK_SIZE + 1));
+        roundTrip(data(5 * BLOCK_SIZE + 12345));
+    }
+
+    private static void roundTrip(byte[] data) throws Exception {
+        try (ParallelDeflater deflater = new ParallelDeflater(4, BLOCK_SIZE)) {
+            ZipWriter.CompressedEntry entry = deflater.submit("assets/minecraft/lang/en_us.json", data,
+                    CompressionPolicy.deflateAll()).get();
+            assertEquals(ZipWriter.DEFLATED, entry.getMethod());
+            assertEquals(data.length, entry.getSize());
+            assertArrayEquals(data, inflate(entry.getData()));
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            assertEquals((int) crc.getValue(), entry.getCrc());
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed) throws DataFormatException {
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(compressed);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                assertTrue("The deflate stream is not finished.", count > 0 || !inflater.needsInput());
+                output.write(buffer, 0, count);
+            }
+            // The stream ends exactly at the end of the last block.
+            assertEquals(0, inflater.getRemaining());
+            return output.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Make compressible data with repeats across the blocks, so the dictionaries are used.
+     */
+    private static byte[] data(int size) {
+        Random random = new Random(size);
+        String[] words = {"\"block\": ", "\"item\": ", "minecraft:", "stone", "diamond", "_sword", ",\n"};
+        ByteArrayOutputStream output = new ByteArrayOutputStream(size + 16);
+        while (output.size() < size) {
+            byte[] word = words[random.nextInt(words.length)].getBytes(StandardCharsets.UTF_8);
+            output.write(word, 0, word.length);
+            output.write('a' + random.nextInt(26));
+        }
+        byte[] data = output.toByteArray();
+        return Arrays.copyOf(data, size);
+    }
+}
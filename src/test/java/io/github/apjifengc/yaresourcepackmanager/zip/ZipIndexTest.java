@@ -0,0 +1,87 @@
+package io.github.apjifengc.yaresourcepackmanager.zip;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Check that the entries copied from a previous zip file keep their CRC and bytes.
+ *
+ * @author APJifengc
+ */
+public class ZipIndexTest {
+    private static final String JSON = "assets/minecraft/models/item/stone.json";
+    private static final String TEXTURE = "assets/minecraft/textures/item/stone.png";
+    private static final String SOUND = "assets/minecraft/sounds/custom/a.ogg";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReuseEntry() throws IOException {
+        byte[] json = "{\"parent\": \"item/generated\", \"textures\": {\"layer0\": \"item/stone\"}}"
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] texture = new byte[4096];
+        new Random(4096).nextBytes(texture);
+        File previous = folder.newFile("previous.zip");
+        try (ZipWriter writer = new ZipWriter(new FileOutputStream(previous))) {
+            writer.write(ZipWriter.compress(JSON, json, -1));
+            writer.write(new ZipWriter.CompressedEntry(TEXTURE, ZipWriter.STORED, crc(texture), texture.length,
+                    texture));
+        }
+        byte[] sound = "another file".getBytes(StandardCharsets.UTF_8);
+        File output = folder.newFile("output.zip");
+        try (ZipIndex index = new ZipIndex(previous);
+             ZipWriter writer = new ZipWriter(new FileOutputStream(output))) {
+            writer.write(ZipWriter.compress(SOUND, sound, -1));
+            writer.copy(index, index.getEntry(JSON));
+            writer.copy(index, index.getEntry(TEXTURE));
+        }
+        try (ZipIndex before = new ZipIndex(previous);
+             ZipIndex after = new ZipIndex(output)) {
+            for (String name : new String[]{JSON, TEXTURE}) {
+                ZipIndex.Entry original = before.getEntry(name);
+                ZipIndex.Entry copied = after.getEntry(name);
+                assertNotNull(copied);
+                assertEquals(original.getMethod(), copied.getMethod());
+                assertEquals(original.getCrc(), copied.getCrc());
+                assertEquals(original.getSize(), copied.getSize());
+                assertEquals(original.getCompressedSize(), copied.getCompressedSize());
+                assertArrayEquals(before.readRaw(original), after.readRaw(copied));
+            }
+            assertEquals(crc(json), after.getEntry(JSON).getCrc());
+            assertEquals(ZipWriter.DEFLATED, after.getEntry(JSON).getMethod());
+        }
+        // The copied entries are still readable by the standard zip reader.
+        try (ZipFile zip = new ZipFile(output)) {
+            assertArrayEquals(json, read(zip, JSON));
+            assertArrayEquals(texture, read(zip, TEXTURE));
+            assertArrayEquals(sound, read(zip, SOUND));
+        }
+    }
+
+    private static byte[] read(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(entry);
+        return zip.getInputStream(entry).readAllBytes();
+    }
+
+    private static int crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}